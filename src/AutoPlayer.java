@@ -0,0 +1,270 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 自动演示玩家
+ * 从当前局面出发枚举当前方块所有可达的“旋转次数 × 列”落点，对落下并消行后的局面用启发式打分
+ * （总高度、空洞数、凹凸度、消除行数），选出得分最高的落点。
+ * 落点的特征由 BoardFeatures.evaluate 在原局面上直接算出，不复制局面。
+ * 可选预判下一个方块：对每个落点先在独立的 BoardFeatures 上落子，再枚举下一个方块的所有落点，取两步之后的最佳得分。
+ * 搜索按落点切分成ForkJoin任务并行执行，调用方只需拿到结果后依次执行旋转、平移和快速下落。
+ * 权重可以在构造时指定（例如 WeightTuner 调优得到的权重），不指定时使用 DEFAULT_WEIGHTS。
+ */
+public class AutoPlayer {
+    /** 默认的启发式权重，按 BoardFeatures 的特征下标排列（得分 = 各项特征 × 权重之和），不得修改 */
+    static final double[] DEFAULT_WEIGHTS = new double[BoardFeatures.COUNT];
+    private static final double GAME_OVER_SCORE = -1e9;        // 导致游戏结束的落点得分
+
+    static {
+        DEFAULT_WEIGHTS[BoardFeatures.AGGREGATE_HEIGHT] = -0.510066;
+        DEFAULT_WEIGHTS[BoardFeatures.LINES] = 0.760666;
+        DEFAULT_WEIGHTS[BoardFeatures.HOLES] = -0.35663;
+        DEFAULT_WEIGHTS[BoardFeatures.BUMPINESS] = -0.184483;
+    }
+
+    private static final int X_OFFSET = 8;       // 打包落点时x坐标的偏移，x最小为-WALL_BITS
+
+    /**
+     * 选出的落点
+     */
+    public static class Move {
+        public final int rotations;  // 需要顺时针旋转的次数
+        public final int x;          // 目标x坐标
+        public final double score;   // 启发式得分
+
+        Move(int rotations, int x, double score) {
+            this.rotations = rotations;
+            this.x = x;
+            this.score = score;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final boolean lookahead;
+    private final double[] weights;
+    private long lastDecisionNanos;   // 最近一次决策耗时
+
+    /**
+     * 构造函数，使用默认权重
+     * @param pool 执行搜索任务的线程池
+     * @param lookahead 是否预判下一个方块
+     */
+    public AutoPlayer(ForkJoinPool pool, boolean lookahead) {
+        this(pool, lookahead, DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * 构造函数
+     * @param pool 执行搜索任务的线程池，null表示在调用线程上顺序搜索（调用方已经按局并行时使用）
+     * @param lookahead 是否预判下一个方块
+     * @param weights 启发式权重，按 BoardFeatures 的特征下标排列，长度为 BoardFeatures.COUNT
+     */
+    public AutoPlayer(ForkJoinPool pool, boolean lookahead, double[] weights) {
+        if (weights.length != BoardFeatures.COUNT) {
+            throw new IllegalArgumentException("权重个数必须为" + BoardFeatures.COUNT + ": " + weights.length);
+        }
+        this.pool = pool;
+        this.lookahead = lookahead;
+        this.weights = weights.clone();
+    }
+
+    /**
+     * 为当前方块选择落点，不修改游戏区域
+     * @param board 游戏区域
+     * @return 最佳落点，如果当前方块没有任何合法落点返回null
+     */
+    public Move decide(GameBoard board) {
+        long start = System.nanoTime();
+        Block block = board.getCurrentBlock();
+        Search search = new Search(board, lookahead, weights);
+        int[] candidates = new int[search.maxCandidates];
+        int count = search.enumerate(search.rows, block.getType(), block.getRotation(),
+            block.getX(), block.getY(), candidates);
+        Move best = null;
+        if (count > 0) {
+            if (pool == null) {
+                best = new SearchTask(search, candidates, 0, count, count).compute();
+            } else {
+                int threshold = lookahead ? 1 : 16;
+                best = pool.invoke(new SearchTask(search, candidates, 0, count, threshold));
+            }
+        }
+        lastDecisionNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    //获取最近一次决策的耗时（纳秒）
+    public long getLastDecisionNanos() {
+        return lastDecisionNanos;
+    }
+
+    /**
+     * 一次决策的只读输入，以及枚举落点和打分的辅助方法
+     * 占用平面的编码与GameBoard一致：第x列对应第(x + WALL_BITS)位，墙壁位恒为1
+     */
+    static final class Search {
+        final BoardFeatures features;   // 决策开始时局面的副本
+        final long[] rows;
+        final int width;
+        final int height;
+        final int stride;
+        final long[] emptyRow;
+        final int maxCandidates;        // 一个方块最多的落点数
+        final int type;
+        final int rotation;
+        final int startY;
+        final int nextType;
+        final int spawnX;
+        final boolean lookahead;
+        final double[] weights;
+
+        Search(GameBoard board, boolean lookahead, double[] weights) {
+            Block block = board.getCurrentBlock();
+            this.width = board.getWidth();
+            this.height = board.getHeight();
+            this.features = new BoardFeatures(width, height);
+            this.features.copyFrom(board.getFeatures());
+            this.rows = features.rows();
+            this.stride = GameBoard.wordsPerRow(width);
+            this.emptyRow = features.emptyRow();
+            this.maxCandidates = Block.ROTATION_COUNT * (width + X_OFFSET);
+            this.type = block.getType();
+            this.rotation = block.getRotation();
+            this.startY = block.getY();
+            this.nextType = board.getNextType();
+            this.spawnX = board.getSpawnX();
+            this.lookahead = lookahead;
+            this.weights = weights;
+        }
+
+        /**
+         * 检查形状能否放在指定位置，与GameBoard.canPlace相同
+         */
+        boolean fits(long[] rows, int[] masks, int x, int y) {
+            int shift = x + GameBoard.WALL_BITS;
+            if (shift < 0 || x > width) {
+                return false;
+            }
+            for (int i = 0; i < masks.length; i++) {
+                if (masks[i] != 0) {
+                    int row = y + i;
+                    if (row >= height) {
+                        return false;
+                    }
+                    if (row >= 0 ? GameBoard.overlaps(rows, row * stride, masks[i], shift)
+                            : GameBoard.overlaps(emptyRow, 0, masks[i], shift)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 枚举从(x0, y0)出发、先原地旋转再左右平移所能到达的所有落点
+         * 与实际操作顺序一致：某次旋转失败后后续旋转也不可能成功
+         * @return 落点个数，落点以 (旋转次数 << 16) | (x + X_OFFSET) 写入out
+         */
+        int enumerate(long[] rows, int type, int rotation, int x0, int y0, int[] out) {
+            int count = 0;
+            for (int turns = 0; turns < Block.ROTATION_COUNT; turns++) {
+                int[] masks = Block.rowMasksOf(type, rotation + turns);
+                if (!fits(rows, masks, x0, y0)) {
+                    break;
+                }
+                out[count++] = (turns << 16) | (x0 + X_OFFSET);
+                for (int x = x0 - 1; fits(rows, masks, x, y0); x--) {
+                    out[count++] = (turns << 16) | (x + X_OFFSET);
+                }
+                for (int x = x0 + 1; fits(rows, masks, x, y0); x++) {
+                    out[count++] = (turns << 16) | (x + X_OFFSET);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 对 BoardFeatures 给出的特征打分
+         * @param features 特征数组
+         * @param extraLines 之前的落子已经消除的行数
+         */
+        double score(int[] features, int extraLines) {
+            double score = weights[BoardFeatures.LINES] * extraLines;
+            for (int i = 0; i < BoardFeatures.COUNT; i++) {
+                score += weights[i] * features[i];
+            }
+            return score;
+        }
+    }
+
+    /**
+     * 对一段落点求最佳值的并行任务，超过阈值时一分为二
+     */
+    static final class SearchTask extends RecursiveTask<Move> {
+        private static final long serialVersionUID = 1L;
+        private final Search search;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        SearchTask(Search search, int[] candidates, int from, int to, int threshold) {
+            this.search = search;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Move compute() {
+            if (to - from > threshold) {
+                int mid = (from + to) >>> 1;
+                SearchTask left = new SearchTask(search, candidates, from, mid, threshold);
+                SearchTask right = new SearchTask(search, candidates, mid, to, threshold);
+                left.fork();
+                Move r = right.compute();
+                Move l = left.join();
+                // 得分相同时选择序号较小的落点，保证结果与并行度无关
+                return r.score > l.score ? r : l;
+            }
+            int[] features = new int[BoardFeatures.COUNT];
+            BoardFeatures after = search.lookahead ? new BoardFeatures(search.width, search.height) : null;
+            int[] nextCandidates = search.lookahead ? new int[search.maxCandidates] : null;
+            Move best = null;
+            for (int i = from; i < to; i++) {
+                int turns = candidates[i] >>> 16;
+                int x = (candidates[i] & 0xFFFF) - X_OFFSET;
+                double score;
+                if (search.lookahead) {
+                    after.copyFrom(search.features);
+                    int lines = after.place(search.type, search.rotation + turns, x, search.startY);
+                    score = lines < 0 ? GAME_OVER_SCORE : bestFollowUp(after, lines, features, nextCandidates);
+                } else {
+                    int lines = search.features.evaluate(search.type, search.rotation + turns, x, search.startY, features);
+                    score = lines < 0 ? GAME_OVER_SCORE : search.score(features, 0);
+                }
+                if (best == null || score > best.score) {
+                    best = new Move(turns, x, score);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 在放下当前方块后的局面上枚举下一个方块的所有落点，返回最佳得分
+         */
+        private double bestFollowUp(BoardFeatures board, int lines, int[] features, int[] nextCandidates) {
+            int count = search.enumerate(board.rows(), search.nextType, 0, search.spawnX, 0, nextCandidates);
+            double best = GAME_OVER_SCORE;
+            for (int j = 0; j < count; j++) {
+                int turns = nextCandidates[j] >>> 16;
+                int x = (nextCandidates[j] & 0xFFFF) - X_OFFSET;
+                if (board.evaluate(search.nextType, turns, x, 0, features) >= 0) {
+                    best = Math.max(best, search.score(features, lines));
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 无界面批量模拟入口
+ * 不创建任何窗口，直接用GameEngine以CPU允许的最快速度连续进行多局游戏，
+ * 最后输出每秒固定的方块数和每秒消除的行数。
+ * 
+ * 用法：java BatchRunner [局数] [线程数] [宽度] [高度] [random|bot]
+ * 策略为bot时由AutoPlayer（不预判）操作，可用作压力测试负载和吞吐量基准。
+ */
+public class BatchRunner {
+    private static final int MAX_PIECES_PER_GAME = 100_000;  // 单局最多方块数，防止对局无限进行
+    
+    /**
+     * 单局模拟的结果
+     */
+    static class Result {
+        long pieces;
+        long lines;
+        long score;
+        long decisionNanos;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        boolean bot = args.length > 4 && args[4].equals("bot");
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<Result>> futures = new ArrayList<>(games);
+        for (int i = 0; i < games; i++) {
+            final long seed = i;
+            futures.add(pool.submit(() -> bot ? playBotGame(width, height, seed) : playGame(width, height, seed)));
+        }
+        long pieces = 0;
+        long lines = 0;
+        long score = 0;
+        long decisionNanos = 0;
+        for (Future<Result> f : futures) {
+            Result r = f.get();
+            pieces += r.pieces;
+            lines += r.lines;
+            score += r.score;
+            decisionNanos += r.decisionNanos;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        
+        System.out.printf("局数: %d  线程: %d  耗时: %.3f s%n", games, threads, seconds);
+        System.out.printf("方块: %d  (%.0f 个/秒)%n", pieces, pieces / seconds);
+        System.out.printf("消行: %d  (%.0f 行/秒)%n", lines, lines / seconds);
+        System.out.printf("平均得分: %.1f%n", (double) score / games);
+        if (bot) {
+            System.out.printf("平均决策耗时: %.1f µs%n", decisionNanos / 1e3 / Math.max(1, pieces));
+        }
+    }
+    
+    /**
+     * 用随机策略完整进行一局游戏：每个方块随机旋转、随机平移后快速下落
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param seed 方块序列和策略使用的随机种子，相同种子的结果完全相同
+     * @return 单局结果
+     */
+    static Result playGame(int width, int height, long seed) {
+        GameEngine engine = new GameEngine(width, height, seed);
+        Random random = new Random(seed);
+        while (!engine.isGameOver() && engine.getPiecesLocked() < MAX_PIECES_PER_GAME) {
+            int rotations = random.nextInt(4);
+            for (int i = 0; i < rotations; i++) {
+                engine.apply(GameEngine.Action.ROTATE);
+            }
+            int shift = random.nextInt(width) - width / 2;
+            GameEngine.Action move = shift < 0 ? GameEngine.Action.MOVE_LEFT : GameEngine.Action.MOVE_RIGHT;
+            for (int i = Math.abs(shift); i > 0; i--) {
+                engine.apply(move);
+            }
+            engine.apply(GameEngine.Action.HARD_DROP);
+            engine.step();
+        }
+        return result(engine);
+    }
+    
+    /**
+     * 由AutoPlayer完整进行一局游戏
+     * 批量模拟本身已经按局并行，因此每局的搜索在当前线程内顺序执行
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param seed 方块序列的随机种子
+     * @return 单局结果
+     */
+    static Result playBotGame(int width, int height, long seed) {
+        GameEngine engine = new GameEngine(width, height, seed);
+        AutoPlayer player = new AutoPlayer(ForkJoinPool.commonPool(), false);
+        long decisionNanos = 0;
+        while (!engine.isGameOver() && engine.getPiecesLocked() < MAX_PIECES_PER_GAME) {
+            AutoPlayer.Move move = player.decide(engine.getGameBoard());
+            decisionNanos += player.getLastDecisionNanos();
+            if (move != null) {
+                engine.dropAt(move.rotations, move.x);
+            }
+            engine.step();
+        }
+        Result result = result(engine);
+        result.decisionNanos = decisionNanos;
+        return result;
+    }
+    
+    private static Result result(GameEngine engine) {
+        Result result = new Result();
+        result.pieces = engine.getPiecesLocked();
+        result.lines = engine.getLinesCleared();
+        result.score = engine.getScoreManager().getScore();
+        return result;
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * 俄罗斯方块类
  * 负责管理单个方块的形状、位置和旋转
@@ -53,18 +55,58 @@ public class Block {
         }
     };
     
-    private int[][] shape;    // 当前方块的形状
+    /** 每种方块的旋转状态数 */
+    public static final int ROTATION_COUNT = 4;
+    
+    /**
+     * 类加载时预先展开的所有旋转状态
+     * ROTATIONS[type][r] 为第type种方块顺时针旋转r次后的形状，
+     * ROW_MASKS[type][r] 为对应形状每一行的占用位掩码（第j列对应第j位），
+     * CELLS[type][r] 为对应形状4个非空格子的偏移量，按 {dx0, dy0, dx1, dy1, ...} 排列。
+     * 这些数组在所有Block实例间共享，调用方不得修改。
+     */
+    private static final int[][][][] ROTATIONS = new int[SHAPES.length][ROTATION_COUNT][][];
+    private static final int[][][] ROW_MASKS = new int[SHAPES.length][ROTATION_COUNT][];
+    private static final int[][][] CELLS = new int[SHAPES.length][ROTATION_COUNT][];
+    /** BOTTOMS[type][r][dx] 为形状第dx列最低格子的行偏移，该列为空时为-1 */
+    private static final int[][][] BOTTOMS = new int[SHAPES.length][ROTATION_COUNT][];
+    /** TOPS[type][r][dx] 为形状第dx列最高格子的行偏移，该列为空时为-1 */
+    private static final int[][][] TOPS = new int[SHAPES.length][ROTATION_COUNT][];
+    
+    static {
+        for (int type = 0; type < SHAPES.length; type++) {
+            int[][] shape = SHAPES[type];
+            for (int r = 0; r < ROTATION_COUNT; r++) {
+                ROTATIONS[type][r] = shape;
+                ROW_MASKS[type][r] = computeRowMasks(shape);
+                CELLS[type][r] = computeCells(shape);
+                BOTTOMS[type][r] = computeBottom(shape);
+                TOPS[type][r] = computeTop(shape);
+                shape = rotateClockwise(shape);
+            }
+        }
+    }
+    
+    private int type;         // 方块类型（0-6）
+    private int rotation;     // 当前旋转状态（0-3）
     private int x;            // 方块在游戏区域中的x坐标
     private int y;            // 方块在游戏区域中的y坐标
-    private int color;        // 方块的颜色编号（1-7）
     
     /**
      * 构造函数
      * @param type 方块类型（0-6，对应7种不同的方块）
      */
     public Block(int type) {
-        this.shape = SHAPES[type];
-        this.color = type + 1;
+        reset(type);
+    }
+    
+    /**
+     * 将方块重置为指定类型的初始状态，用于复用同一个Block对象
+     * @param type 方块类型（0-6）
+     */
+    public void reset(int type) {
+        this.type = type;
+        this.rotation = 0;
         this.x = 0;
         this.y = 0;
     }
@@ -95,31 +137,196 @@ public class Block {
     }
     
     
-    //顺时针旋转方块
+    //顺时针旋转方块，只改变旋转状态索引
     public void rotate() {
+        rotation = (rotation + 1) & (ROTATION_COUNT - 1);
+    }
+    
+    //逆时针旋转方块
+    public void rotateBack() {
+        rotation = (rotation + ROTATION_COUNT - 1) & (ROTATION_COUNT - 1);
+    }
+    
+    /**
+     * 直接设置旋转状态
+     * @param rotation 旋转状态（0-3）
+     */
+    public void setRotation(int rotation) {
+        this.rotation = rotation & (ROTATION_COUNT - 1);
+    }
+    
+    /**
+     * 将形状顺时针旋转90度
+     * @param shape 原形状
+     * @return 旋转后的新形状
+     */
+    private static int[][] rotateClockwise(int[][] shape) {
         int[][] newShape = new int[shape[0].length][shape.length];
         for (int i = 0; i < shape.length; i++) {
             for (int j = 0; j < shape[i].length; j++) {
                 newShape[j][shape.length - 1 - i] = shape[i][j];
             }
         }
-        shape = newShape;
+        return newShape;
     }
     
-    //逆时针旋转方块（用于旋转失败时恢复）
-    public void rotateBack() {
-        int[][] newShape = new int[shape[0].length][shape.length];
+    /**
+     * 计算形状每一行的占用位掩码
+     * @param shape 方块形状
+     * @return 行掩码数组，第i个元素的第j位表示shape[i][j]是否非空
+     */
+    private static int[] computeRowMasks(int[][] shape) {
+        int[] masks = new int[shape.length];
+        for (int i = 0; i < shape.length; i++) {
+            for (int j = 0; j < shape[i].length; j++) {
+                if (shape[i][j] != 0) {
+                    masks[i] |= 1 << j;
+                }
+            }
+        }
+        return masks;
+    }
+    
+    /**
+     * 计算形状中非空格子的偏移量
+     * @param shape 方块形状
+     * @return {dx0, dy0, dx1, dy1, ...} 形式的偏移量数组
+     */
+    private static int[] computeCells(int[][] shape) {
+        int count = 0;
+        for (int[] row : shape) {
+            for (int cell : row) {
+                if (cell != 0) {
+                    count++;
+                }
+            }
+        }
+        int[] cells = new int[count * 2];
+        int k = 0;
         for (int i = 0; i < shape.length; i++) {
             for (int j = 0; j < shape[i].length; j++) {
-                newShape[shape[i].length - 1 - j][i] = shape[i][j];
+                if (shape[i][j] != 0) {
+                    cells[k++] = j;
+                    cells[k++] = i;
+                }
             }
         }
-        shape = newShape;
+        return cells;
     }
     
-    //获取当前方块的形状
+    //获取当前方块的形状（预计算的共享数组，不得修改）
     public int[][] getShape() {
-        return shape;
+        return ROTATIONS[type][rotation];
+    }
+    
+    /**
+     * 计算形状的底部轮廓
+     * @param shape 方块形状
+     * @return 每列最低格子的行偏移，空列为-1
+     */
+    private static int[] computeBottom(int[][] shape) {
+        int[] bottom = new int[shape[0].length];
+        Arrays.fill(bottom, -1);
+        for (int i = 0; i < shape.length; i++) {
+            for (int j = 0; j < shape[i].length; j++) {
+                if (shape[i][j] != 0) {
+                    bottom[j] = i;
+                }
+            }
+        }
+        return bottom;
+    }
+    
+    /**
+     * 计算形状的顶部轮廓
+     * @param shape 方块形状
+     * @return 每列最高格子的行偏移，空列为-1
+     */
+    private static int[] computeTop(int[][] shape) {
+        int[] top = new int[shape[0].length];
+        Arrays.fill(top, -1);
+        for (int i = shape.length - 1; i >= 0; i--) {
+            for (int j = 0; j < shape[i].length; j++) {
+                if (shape[i][j] != 0) {
+                    top[j] = i;
+                }
+            }
+        }
+        return top;
+    }
+    
+    //获取当前形状的底部轮廓：每列最低格子的行偏移，空列为-1
+    public int[] getBottomProfile() {
+        return BOTTOMS[type][rotation];
+    }
+    
+    //获取当前形状的行掩码，供游戏区域做位运算碰撞检测
+    public int[] getRowMasks() {
+        return ROW_MASKS[type][rotation];
+    }
+    
+    /**
+     * 获取指定旋转状态的行掩码，用于在不改变方块状态的情况下检测旋转是否可行
+     * @param rotation 旋转状态（0-3）
+     * @return 行掩码数组
+     */
+    public int[] getRowMasks(int rotation) {
+        return ROW_MASKS[type][rotation & (ROTATION_COUNT - 1)];
+    }
+    
+    /**
+     * 获取任意方块类型和旋转状态的行掩码，不需要Block实例
+     * @param type 方块类型（0-6）
+     * @param rotation 旋转状态（0-3）
+     * @return 行掩码数组
+     */
+    public static int[] rowMasksOf(int type, int rotation) {
+        return ROW_MASKS[type][rotation & (ROTATION_COUNT - 1)];
+    }
+    
+    /**
+     * 获取任意方块类型和旋转状态的格子偏移量，不需要Block实例
+     * @param type 方块类型（0-6）
+     * @param rotation 旋转状态（0-3）
+     * @return {dx0, dy0, dx1, dy1, ...}，不得修改
+     */
+    public static int[] cellsOf(int type, int rotation) {
+        return CELLS[type][rotation & (ROTATION_COUNT - 1)];
+    }
+    
+    /**
+     * 获取任意方块类型和旋转状态的底部轮廓，不需要Block实例
+     * @param type 方块类型（0-6）
+     * @param rotation 旋转状态（0-3）
+     * @return 每列最低格子的行偏移，空列为-1，不得修改
+     */
+    public static int[] bottomProfileOf(int type, int rotation) {
+        return BOTTOMS[type][rotation & (ROTATION_COUNT - 1)];
+    }
+    
+    /**
+     * 获取任意方块类型和旋转状态的顶部轮廓，不需要Block实例
+     * @param type 方块类型（0-6）
+     * @param rotation 旋转状态（0-3）
+     * @return 每列最高格子的行偏移，空列为-1，不得修改
+     */
+    public static int[] topProfileOf(int type, int rotation) {
+        return TOPS[type][rotation & (ROTATION_COUNT - 1)];
+    }
+    
+    //获取当前形状非空格子的偏移量 {dx0, dy0, dx1, dy1, ...}
+    public int[] getCells() {
+        return CELLS[type][rotation];
+    }
+    
+    //获取方块类型（0-6）
+    public int getType() {
+        return type;
+    }
+    
+    //获取当前旋转状态（0-3）
+    public int getRotation() {
+        return rotation;
     }
     
     //获取方块的x坐标
@@ -137,6 +344,6 @@ public class Block {
      * @return 颜色编号（1-7）
      */
     public int getColor() {
-        return color;
+        return type + 1;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,448 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 游戏区域热点路径的微基准测试
+ * 在不同局面（空、半满、接近顶部、有1-4行待消除）下测量 canMove、rotate、dropDown、
+ * placeBlock、clearLines、BoardFeatures.evaluate 和 Block.rotate 每次操作的耗时，
+ * 以及每次操作分配的字节数（相当于 JMH 的 -prof gc 中的 gc.alloc.rate.norm）。
+ *
+ * 会修改局面的操作（placeBlock、clearLines）每次都要先用 copyFrom 恢复局面，
+ * 报告的是扣除恢复开销后的净耗时。
+ * 测量前后用逐格计数检查增量维护的局面特征，特征出错时直接失败，而不是测出一组错误局面上的数字。
+ *
+ * 用法：java BoardBenchmark [--scaling] [--repeat 次数] [--save 文件] [--baseline 文件]
+ * --save 把结果写入文件作为新的基线，--baseline 与已记录的基线逐项比较。
+ * --repeat 把整组测量重复多次，每项取各次的中位数（误差为各次之间的标准差），
+ * 排除个别轮次受JIT或系统干扰产生的离群值，记录基线时应当使用。
+ * --scaling 改为在不同宽度和高度的游戏区域上测量同一局面（clear-4），局面名称形如
+ * clear-4@1024x2000，用来观察各操作的耗时随宽度和高度的增长情况。
+ */
+public class BoardBenchmark {
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 20;
+    private static final int WARMUP_ITERATIONS = 5;           // 预热轮数
+    private static final int MEASURE_ITERATIONS = 5;          // 测量轮数
+    private static final long ITERATION_NANOS = 200_000_000L; // 每轮持续时间
+    private static final int BATCH = 1024;                    // 每次检查时间前最多连续执行的次数
+    private static final long BATCH_NANOS = 1_000_000L;       // 慢操作的一批不超过约1毫秒，以免大局面上超出每轮时间
+
+    private static final String[] SCENARIOS = {
+        "empty", "half", "near-top", "clear-1", "clear-2", "clear-3", "clear-4"
+    };
+    private static final String SCALING_SCENARIO = "clear-4";          // --scaling 使用的局面
+    private static final int[] SCALING_WIDTHS = {10, 64, 256, 1024};   // --scaling 测量的宽度
+    private static final int[] SCALING_HEIGHTS = {20, 200, 2000};      // --scaling 测量的高度
+
+    static long sink;  // 收集操作结果，防止JIT把操作当作死代码消除
+
+    /**
+     * 被测量的单次操作
+     */
+    interface Op {
+        void run();
+    }
+
+    /**
+     * 单项测量结果
+     */
+    static class Measurement {
+        final String scenario;
+        final String operation;
+        double nsPerOp;
+        double error;       // 各轮之间的标准差
+        double bytesPerOp;
+
+        Measurement(String scenario, String operation) {
+            this.scenario = scenario;
+            this.operation = operation;
+        }
+
+        String key() {
+            return scenario + " " + operation;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String savePath = null;
+        String baselinePath = null;
+        boolean scaling = false;
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--scaling")) {
+                scaling = true;
+            } else if (args[i].equals("--repeat") && i + 1 < args.length) {
+                repeat = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--save") && i + 1 < args.length) {
+                savePath = args[++i];
+            } else if (args[i].equals("--baseline") && i + 1 < args.length) {
+                baselinePath = args[++i];
+            }
+        }
+        Map<String, double[]> baseline = baselinePath != null ? loadBaseline(Paths.get(baselinePath)) : new HashMap<>();
+
+        List<List<Measurement>> runs = new ArrayList<>();
+        for (int r = 0; r < repeat; r++) {
+            runs.add(runAll(scaling));
+        }
+        List<Measurement> results = repeat == 1 ? runs.get(0) : median(runs);
+
+        int nameWidth = 9;
+        for (Measurement m : results) {
+            nameWidth = Math.max(nameWidth, m.scenario.length());
+        }
+        String header = "%-" + nameWidth + "s %-12s %12s %10s %10s %10s%n";
+        String row = "%-" + nameWidth + "s %-12s %12.2f %10.2f %10.1f %10s%n";
+        System.out.printf(header, "局面", "操作", "ns/op", "误差", "B/op", "对比基线");
+        for (Measurement m : results) {
+            double[] base = baseline.get(m.key());
+            String delta = base == null ? "" : String.format("%+.1f%%", (m.nsPerOp - base[0]) * 100 / base[0]);
+            System.out.printf(row,
+                m.scenario, m.operation, m.nsPerOp, m.error, m.bytesPerOp, delta);
+        }
+        if (savePath != null) {
+            saveBaseline(Paths.get(savePath), results, repeat);
+        }
+    }
+
+    /**
+     * 测量所有局面，得到一组结果
+     * @param scaling 是否测量不同尺寸的游戏区域
+     */
+    private static List<Measurement> runAll(boolean scaling) {
+        List<Measurement> results = new ArrayList<>();
+        if (scaling) {
+            for (int height : SCALING_HEIGHTS) {
+                for (int width : SCALING_WIDTHS) {
+                    results.addAll(runScenario(SCALING_SCENARIO, width, height,
+                        SCALING_SCENARIO + "@" + width + "x" + height));
+                }
+            }
+        } else {
+            for (String scenario : SCENARIOS) {
+                results.addAll(runScenario(scenario, WIDTH, HEIGHT, scenario));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 合并重复测量的多组结果：每项取各组的中位数，误差为各组之间的标准差
+     * @param runs 各组结果，项的顺序相同
+     */
+    private static List<Measurement> median(List<List<Measurement>> runs) {
+        List<Measurement> merged = new ArrayList<>();
+        int n = runs.size();
+        for (int i = 0; i < runs.get(0).size(); i++) {
+            Measurement first = runs.get(0).get(i);
+            double[] ns = new double[n];
+            double[] bytes = new double[n];
+            double mean = 0;
+            for (int r = 0; r < n; r++) {
+                ns[r] = runs.get(r).get(i).nsPerOp;
+                bytes[r] = runs.get(r).get(i).bytesPerOp;
+                mean += ns[r] / n;
+            }
+            double variance = 0;
+            for (double v : ns) {
+                variance += (v - mean) * (v - mean) / n;
+            }
+            Arrays.sort(ns);
+            Arrays.sort(bytes);
+            Measurement m = new Measurement(first.scenario, first.operation);
+            m.nsPerOp = n % 2 == 1 ? ns[n / 2] : (ns[n / 2 - 1] + ns[n / 2]) / 2;
+            m.bytesPerOp = bytes[n / 2];
+            m.error = Math.sqrt(variance);
+            merged.add(m);
+        }
+        return merged;
+    }
+
+    /**
+     * 测量一个局面下的所有操作
+     * @param scenario 局面名称
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param label 结果中显示的局面名称
+     * @return 测量结果
+     */
+    private static List<Measurement> runScenario(String scenario, int width, int height, String label) {
+        GameBoard template = buildBoard(scenario, width, height);
+        GameBoard work = buildBoard(scenario, width, height);
+        checkFeatures(template, label + " 构造后");
+        Block block = work.getCurrentBlock();
+        int spawnX = block.getX();
+        int spawnY = block.getY();
+        List<Measurement> results = new ArrayList<>();
+
+        int[] column = {0};
+        results.add(measure(label, "canMove", () -> {
+            column[0] = (column[0] + 1) % width;
+            if (work.canMove(column[0] - 1, spawnY)) {
+                sink++;
+            }
+        }));
+        results.add(measure(label, "rotate", () -> {
+            if (work.rotate()) {
+                sink++;
+            }
+        }));
+        results.add(measure(label, "dropDown", () -> {
+            block.setPosition(spawnX, spawnY);
+            sink += work.dropDown();
+        }));
+
+        // 在出现位置放得下当前方块的各列上轮流估值，不修改局面
+        List<Integer> columns = new ArrayList<>();
+        for (int x = -GameBoard.WALL_BITS; x < width; x++) {
+            if (work.canMove(x, spawnY)) {
+                columns.add(x);
+            }
+        }
+        int[] xs = columns.stream().mapToInt(Integer::intValue).toArray();
+        BoardFeatures features = work.getFeatures();
+        int[] out = new int[BoardFeatures.COUNT];
+        int[] next = {0};
+        results.add(measure(label, "evaluate", () -> {
+            next[0] = next[0] + 1 == xs.length ? 0 : next[0] + 1;
+            sink += features.evaluate(block.getType(), block.getRotation(), xs[next[0]], spawnY, out);
+        }));
+
+        Measurement restore = measure(label, "copyFrom", () -> work.copyFrom(template));
+        results.add(restore);
+
+        // 模板中的当前方块已经落到底部，恢复后直接固定
+        template.dropDown();
+        Measurement place = measure(label, "placeBlock", () -> {
+            work.copyFrom(template);
+            work.placeBlock();
+        });
+        Measurement clear = measure(label, "clearLines", () -> {
+            work.copyFrom(template);
+            sink += work.clearLines();
+        });
+        checkFeatures(work, label + " 消行后");
+        for (Measurement m : new Measurement[] {place, clear}) {
+            m.nsPerOp = Math.max(0, m.nsPerOp - restore.nsPerOp);
+            m.bytesPerOp = Math.max(0, m.bytesPerOp - restore.bytesPerOp);
+            results.add(m);
+        }
+
+        Block standalone = new Block(0);
+        results.add(measure(label, "Block.rotate", () -> {
+            standalone.rotate();
+            sink += standalone.getRotation();
+        }));
+        return results;
+    }
+
+    /**
+     * 按名称构造局面，随机填充使用固定种子以保证每次运行可比较
+     * @param scenario 局面名称
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @return 构造好的游戏区域
+     */
+    static GameBoard buildBoard(String scenario, int width, int height) {
+        GameBoard board = new GameBoard(width, height);
+        Random random = new Random(42);
+        int filledRows;
+        int fullRows = 0;
+        switch (scenario) {
+            case "half":
+                filledRows = height / 2;
+                break;
+            case "near-top":
+                filledRows = height - 4;
+                break;
+            case "clear-1":
+            case "clear-2":
+            case "clear-3":
+            case "clear-4":
+                fullRows = scenario.charAt(scenario.length() - 1) - '0';
+                filledRows = height / 2;
+                break;
+            default:
+                filledRows = 0;
+        }
+        int[] colors = new int[width];
+        for (int y = height - filledRows; y < height; y++) {
+            boolean full = y >= height - fullRows;
+            int hole = random.nextInt(width);
+            for (int x = 0; x < width; x++) {
+                colors[x] = full || (x != hole && random.nextInt(4) != 0) ? 1 + random.nextInt(7) : 0;
+            }
+            board.setRow(y, colors);
+        }
+        return board;
+    }
+
+    /**
+     * 逐格数出局面特征，与增量维护的 BoardFeatures 比较，不一致时抛出异常
+     * 有待消除满行的局面（clear-N）同时检查了 rebuild 对满行的计数
+     * @param board 游戏区域
+     * @param label 出错时显示的局面名称
+     */
+    static void checkFeatures(GameBoard board, String label) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        int[] heights = new int[width];
+        int[] expected = new int[BoardFeatures.COUNT];
+        int cells = 0;
+        for (int y = 0; y < height; y++) {
+            boolean previous = true;    // 左侧墙壁
+            for (int x = 0; x < width; x++) {
+                boolean filled = board.getCell(x, y) != 0;
+                if (filled) {
+                    cells++;
+                    if (heights[x] == 0) {
+                        heights[x] = height - y;
+                    }
+                }
+                if (filled != previous) {
+                    expected[BoardFeatures.ROW_TRANSITIONS]++;
+                }
+                previous = filled;
+            }
+            if (!previous) {
+                expected[BoardFeatures.ROW_TRANSITIONS]++;    // 右侧墙壁
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            int left = x > 0 ? heights[x - 1] : Integer.MAX_VALUE;
+            int right = x + 1 < width ? heights[x + 1] : Integer.MAX_VALUE;
+            expected[BoardFeatures.AGGREGATE_HEIGHT] += heights[x];
+            expected[BoardFeatures.MAX_HEIGHT] = Math.max(expected[BoardFeatures.MAX_HEIGHT], heights[x]);
+            expected[BoardFeatures.WELLS] += Math.max(0, Math.min(left, right) - heights[x]);
+            if (x + 1 < width) {
+                expected[BoardFeatures.BUMPINESS] += Math.abs(heights[x] - heights[x + 1]);
+            }
+            if (board.getColumnHeight(x) != heights[x]) {
+                throw new IllegalStateException(label + "：第" + x + "列高度为" + board.getColumnHeight(x)
+                    + "，逐格计数为" + heights[x]);
+            }
+        }
+        expected[BoardFeatures.HOLES] = expected[BoardFeatures.AGGREGATE_HEIGHT] - cells;
+        int[] actual = new int[BoardFeatures.COUNT];
+        board.getFeatures().copyTo(actual);
+        if (!Arrays.equals(actual, expected)) {
+            throw new IllegalStateException(label + "：特征为" + Arrays.toString(actual)
+                + "，逐格计数为" + Arrays.toString(expected));
+        }
+    }
+
+    /**
+     * 测量单个操作：先预热，再取多轮结果的平均值和标准差，同时记录本线程分配的字节数
+     */
+    private static Measurement measure(String scenario, String operation, Op op) {
+        int batch = batchSize(op);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(op, batch);
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double[] samples = new double[MEASURE_ITERATIONS];
+        long totalOps = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long ops = runIteration(op, batch);
+            samples[i] = (double) (System.nanoTime() - start) / ops;
+            totalOps += ops;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Measurement m = new Measurement(scenario, operation);
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        m.nsPerOp = sum / samples.length;
+        double variance = 0;
+        for (double sample : samples) {
+            variance += (sample - m.nsPerOp) * (sample - m.nsPerOp);
+        }
+        m.error = Math.sqrt(variance / samples.length);
+        m.bytesPerOp = (double) allocated / totalOps;
+        return m;
+    }
+
+    /**
+     * 估计每批执行的次数：快操作每批BATCH次，慢操作减少到一批约BATCH_NANOS
+     */
+    private static int batchSize(Op op) {
+        long start = System.nanoTime();
+        int ops = 0;
+        while (ops < BATCH && System.nanoTime() - start < BATCH_NANOS) {
+            op.run();
+            ops++;
+        }
+        return Math.max(1, ops);
+    }
+
+    /**
+     * 连续执行操作直到本轮时间用完
+     * @param batch 每次检查时间前连续执行的次数
+     * @return 本轮执行的次数
+     */
+    private static long runIteration(Op op, int batch) {
+        long start = System.nanoTime();
+        long ops = 0;
+        do {
+            for (int i = 0; i < batch; i++) {
+                op.run();
+            }
+            ops += batch;
+        } while (System.nanoTime() - start < ITERATION_NANOS);
+        return ops;
+    }
+
+    /**
+     * 保存基线，每行格式为：局面 操作 ns/op B/op
+     */
+    private static void saveBaseline(Path path, List<Measurement> results, int repeat) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# BoardBenchmark 基线：局面 操作 ns/op B/op\n");
+        sb.append("# java ").append(System.getProperty("java.version"))
+          .append(", ").append(System.getProperty("os.arch"))
+          .append(", ").append(Runtime.getRuntime().availableProcessors()).append(" CPU")
+          .append(", 重复 ").append(repeat).append(" 次取中位数\n");
+        for (Measurement m : results) {
+            sb.append(String.format(Locale.ROOT, "%s %s %.2f %.1f%n", m.scenario, m.operation, m.nsPerOp, m.bytesPerOp));
+        }
+        Files.writeString(path, sb.toString());
+    }
+
+    /**
+     * 读取基线文件
+     * @return 以“局面 操作”为键、{ns/op, B/op}为值的映射
+     */
+    private static Map<String, double[]> loadBaseline(Path path) throws IOException {
+        Map<String, double[]> baseline = new HashMap<>();
+        if (!Files.exists(path)) {
+            return baseline;
+        }
+        for (String line : Files.readAllLines(path)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(" ");
+            if (parts.length == 4) {
+                baseline.put(parts[0] + " " + parts[1],
+                    new double[] {Double.parseDouble(parts[2]), Double.parseDouble(parts[3])});
+            }
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,577 @@
+import java.util.Arrays;
+
+/**
+ * 局面特征
+ * 维护已固定方块的评估特征：总高度、最大高度、空洞数、凹凸度、行变换数和井深，
+ * 供自动演示、权重调优等分析工具给局面打分。
+ *
+ * 特征随局面变化增量更新，不再逐格扫描颜色平面：
+ * 空洞数 = 总高度 - 格子总数（每列最高方块以下的格子要么有方块要么是空洞），
+ * 格子总数在放置时加上方块格数、消行时减去整行格数；
+ * 行变换数只看方块格子两侧的几个相邻对；与列有关的特征（总高度、最大高度、凹凸度、井深）由列高一遍算出。
+ *
+ * evaluate 是“假设”接口：计算把某个方块放到某个落点并消行之后的特征，不复制也不修改局面。
+ * 不消行时只看方块覆盖的几列和几行，消行时对占用平面做一遍按位并行的扫描（每行按long逐字进行，字间传递进位）。
+ *
+ * 两种用法：
+ * GameBoard 持有的实例与游戏区域共享占用平面和列高，由 placeBlock、clearLines 等调用 onPlace/onClear/rebuild 维护；
+ * 独立实例自己保存占用平面，可以 copyFrom 后用 place 模拟落子，供搜索在假设的局面上继续评估。
+ * 只读方法（evaluate 和各项 get）可以被多个线程同时调用，前提是局面在此期间不变。
+ */
+public class BoardFeatures {
+    // evaluate 和 copyTo 输出数组中各项特征的下标
+    public static final int AGGREGATE_HEIGHT = 0;    // 所有列高度之和
+    public static final int MAX_HEIGHT = 1;          // 最高的列高
+    public static final int HOLES = 2;               // 空洞数（上方有方块的空格）
+    public static final int BUMPINESS = 3;           // 相邻列高度差之和
+    public static final int ROW_TRANSITIONS = 4;     // 每行相邻格子（含两侧墙壁）空满变化的次数之和
+    public static final int WELLS = 5;               // 井深之和：每列比两侧（墙壁视为无限高）中较低者低的格数
+    public static final int LINES = 6;               // 消除的行数
+    public static final int COUNT = 7;               // 特征个数
+
+    private static final int WALL = Integer.MAX_VALUE;   // 墙壁的高度
+    private static final long FULL_WORD = -1L;
+    // scan 的工作区（seen 和叠加了方块的行各占stride个long），按线程复用：
+    // evaluate 可能被多个搜索线程在同一实例上同时调用，不能放在实例字段里
+    private static final ThreadLocal<long[]> SCAN_BUFFER = ThreadLocal.withInitial(() -> new long[0]);
+
+    private final int width;
+    private final int height;
+    private final int stride;            // 每行的long个数
+    private final long[] rows;           // 占用平面，编码与GameBoard相同
+    private final int[] heights;         // 每列高度
+    private final boolean attached;      // 是否与GameBoard共享占用平面和列高
+    private final long[] emptyRow;       // 空行，只有墙壁位为1
+    private final long[] fieldMask;      // 只有棋盘列为1的掩码
+    private final long[] pairMask;       // 第b位表示第b列和第b+1列都在棋盘内
+    private final long[] transitionMask; // 第b位表示第b-1位和第b位这一对相邻格子，含左右墙壁
+    private final int[] scratch = new int[COUNT];   // rebuild 的扫描结果
+
+    private int cells;                  // 已固定的格子总数
+    private int aggregateHeight;
+    private int maxHeight;
+    private int bumpiness;
+    private int rowTransitions;
+    private int wells;
+
+    /**
+     * 构造函数：空局面的独立实例
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     */
+    public BoardFeatures(int width, int height) {
+        this(width, height, new long[height * GameBoard.wordsPerRow(width)], new int[width], false);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(emptyRow, 0, rows, y * stride, stride);
+        }
+        rebuild();
+    }
+
+    /**
+     * 构造函数：与GameBoard共享占用平面和列高，由GameBoard在创建时调用
+     */
+    BoardFeatures(int width, int height, long[] rows, int[] heights) {
+        this(width, height, rows, heights, true);
+        rebuild();
+    }
+
+    private BoardFeatures(int width, int height, long[] rows, int[] heights, boolean attached) {
+        this.width = width;
+        this.height = height;
+        this.stride = GameBoard.wordsPerRow(width);
+        this.rows = rows;
+        this.heights = heights;
+        this.attached = attached;
+        this.emptyRow = GameBoard.emptyRow(width);
+        this.fieldMask = bitRange(stride, GameBoard.WALL_BITS, GameBoard.WALL_BITS + width);
+        this.pairMask = bitRange(stride, GameBoard.WALL_BITS, GameBoard.WALL_BITS + width - 1);
+        this.transitionMask = bitRange(stride, GameBoard.WALL_BITS, GameBoard.WALL_BITS + width + 1);
+    }
+
+    //第from位到第to - 1位为1的掩码
+    private static long[] bitRange(int stride, int from, int to) {
+        long[] mask = new long[stride];
+        for (int b = from; b < to; b++) {
+            mask[b >>> 6] |= 1L << b;
+        }
+        return mask;
+    }
+
+    /**
+     * 把另一个同尺寸实例的局面和特征复制到本实例，不重新扫描
+     * @param other 源实例
+     */
+    public void copyFrom(BoardFeatures other) {
+        checkDetached();
+        System.arraycopy(other.rows, 0, rows, 0, rows.length);
+        System.arraycopy(other.heights, 0, heights, 0, width);
+        cells = other.cells;
+        aggregateHeight = other.aggregateHeight;
+        maxHeight = other.maxHeight;
+        bumpiness = other.bumpiness;
+        rowTransitions = other.rowTransitions;
+        wells = other.wells;
+    }
+
+    /**
+     * 方块已经写入占用平面、列高也已更新之后调用
+     * 方块格子原来都是空的，所以去掉方块就是原来的行
+     * @param masks 方块的行掩码
+     * @param x 方块的x坐标
+     * @param y 方块的y坐标
+     */
+    void onPlace(int[] masks, int x, int y) {
+        int shift = x + GameBoard.WALL_BITS;
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0 && y + i >= 0) {
+                rowTransitions += transitionDelta((y + i) * stride, masks[i], shift);
+                cells += Integer.bitCount(masks[i]);
+            }
+        }
+        refreshColumns();
+    }
+
+    /**
+     * 消行、列高更新之后调用
+     * 满行没有行变换，顶部补入的空行各有2次（两侧墙壁）
+     * @param lines 消除的行数
+     */
+    void onClear(int lines) {
+        rowTransitions += 2 * lines;
+        cells -= width * lines;
+        refreshColumns();
+    }
+
+    /**
+     * 扫描占用平面重新计算所有特征和列高，用于局面被整体改写之后
+     */
+    void rebuild() {
+        scan(null, 0, 0, scratch, heights);
+        aggregateHeight = scratch[AGGREGATE_HEIGHT];
+        maxHeight = scratch[MAX_HEIGHT];
+        cells = aggregateHeight - scratch[HOLES];
+        bumpiness = scratch[BUMPINESS];
+        rowTransitions = scratch[ROW_TRANSITIONS];
+        wells = scratch[WELLS];
+    }
+
+    //由列高重新计算总高度、最大高度、凹凸度和井深，O(width)
+    private void refreshColumns() {
+        int aggregate = 0;
+        int max = 0;
+        int bump = 0;
+        int wellSum = 0;
+        for (int x = 0; x < width; x++) {
+            int h = heights[x];
+            aggregate += h;
+            max = Math.max(max, h);
+            if (x > 0) {
+                bump += Math.abs(h - heights[x - 1]);
+            }
+            wellSum += wellDepth(x > 0 ? heights[x - 1] : WALL, h, x + 1 < width ? heights[x + 1] : WALL);
+        }
+        aggregateHeight = aggregate;
+        maxHeight = max;
+        bumpiness = bump;
+        wells = wellSum;
+    }
+
+    /**
+     * 在本实例的局面上放置方块并消行，只能用于独立实例
+     * @param type 方块类型（0-6）
+     * @param rotation 旋转状态
+     * @param x 方块的x坐标
+     * @param y0 开始下落的y坐标，方块在此处必须放得下
+     * @return 消除的行数，方块固定在顶部之外（游戏结束）时返回-1且局面不变
+     */
+    public int place(int type, int rotation, int x, int y0) {
+        checkDetached();
+        int[] masks = Block.rowMasksOf(type, rotation);
+        int[] top = Block.topProfileOf(type, rotation);
+        int y = landingRow(masks, Block.bottomProfileOf(type, rotation), x, y0);
+        if (aboveTop(masks, y)) {
+            return -1;
+        }
+        int shift = x + GameBoard.WALL_BITS;
+        boolean full = false;
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0) {
+                GameBoard.set(rows, (y + i) * stride, masks[i], shift);
+                full |= GameBoard.isFull(rows, (y + i) * stride, stride);
+            }
+        }
+        for (int dx = 0; dx < top.length; dx++) {
+            if (top[dx] >= 0) {
+                heights[x + dx] = Math.max(heights[x + dx], height - y - top[dx]);
+            }
+        }
+        if (!full) {
+            onPlace(masks, x, y);
+            return 0;
+        }
+        int lines = 0;
+        int write = height - 1;
+        for (int read = height - 1; read >= 0; read--) {
+            if (GameBoard.isFull(rows, read * stride, stride)) {
+                lines++;
+            } else {
+                System.arraycopy(rows, read * stride, rows, write-- * stride, stride);
+            }
+        }
+        for (; write >= 0; write--) {
+            System.arraycopy(emptyRow, 0, rows, write * stride, stride);
+        }
+        rebuild();
+        return lines;
+    }
+
+    /**
+     * 计算把方块从(x, y0)下落到底、固定并消行之后的特征，不修改局面
+     * @param type 方块类型（0-6）
+     * @param rotation 旋转状态
+     * @param x 方块的x坐标
+     * @param y0 开始下落的y坐标，方块在此处必须放得下
+     * @param out 输出数组，长度至少为COUNT，按本类的下标常量填写
+     * @return 消除的行数，方块固定在顶部之外（游戏结束）时返回-1且不写out
+     */
+    public int evaluate(int type, int rotation, int x, int y0, int[] out) {
+        int[] masks = Block.rowMasksOf(type, rotation);
+        int[] top = Block.topProfileOf(type, rotation);
+        int y = landingRow(masks, Block.bottomProfileOf(type, rotation), x, y0);
+        int shift = x + GameBoard.WALL_BITS;
+        int transitions = rowTransitions;
+        int added = 0;
+        boolean full = false;
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0) {
+                if (y + i < 0) {
+                    return -1;
+                }
+                int base = (y + i) * stride;
+                full |= GameBoard.isFullWith(rows, base, stride, masks[i], shift);
+                transitions += transitionDelta(base, masks[i], shift);
+                added += Integer.bitCount(masks[i]);
+            }
+        }
+        if (full) {
+            return scan(masks, shift, y, out, null);
+        }
+        // 不消行时只有方块覆盖的列高度会变，凹凸度和井深只需在这几列及其左右邻列上滚动地重算一遍
+        int aggregate = aggregateHeight;
+        int max = maxHeight;
+        int bump = bumpiness;
+        int wellSum = wells;
+        int from = Math.max(0, x - 1);
+        int to = Math.min(width - 1, x + top.length);
+        int leftOld = from > 0 ? heights[from - 1] : WALL;
+        int leftNew = leftOld;
+        int curOld = heights[from];
+        int curNew = heightAfter(from, x, y, top);
+        for (int c = from; c <= to; c++) {
+            int rightOld = WALL;
+            int rightNew = WALL;
+            if (c + 1 < width) {
+                rightOld = heights[c + 1];
+                rightNew = heightAfter(c + 1, x, y, top);
+                if (c < to) {
+                    bump += Math.abs(rightNew - curNew) - Math.abs(rightOld - curOld);
+                }
+            }
+            aggregate += curNew - curOld;
+            max = Math.max(max, curNew);
+            wellSum += wellDepth(leftNew, curNew, rightNew) - wellDepth(leftOld, curOld, rightOld);
+            leftOld = curOld;
+            leftNew = curNew;
+            curOld = rightOld;
+            curNew = rightNew;
+        }
+        out[AGGREGATE_HEIGHT] = aggregate;
+        out[MAX_HEIGHT] = max;
+        out[HOLES] = aggregate - cells - added;
+        out[BUMPINESS] = bump;
+        out[ROW_TRANSITIONS] = transitions;
+        out[WELLS] = wellSum;
+        out[LINES] = 0;
+        return 0;
+    }
+
+    //假设方块固定在(x, y)之后第c列的高度
+    private int heightAfter(int c, int x, int y, int[] top) {
+        int dx = c - x;
+        if (dx >= 0 && dx < top.length && top[dx] >= 0) {
+            return Math.max(heights[c], height - y - top[dx]);
+        }
+        return heights[c];
+    }
+
+    private static int wellDepth(int left, int h, int right) {
+        return Math.max(0, Math.min(left, right) - h);
+    }
+
+    //一行中相邻格子（含两侧墙壁）空满变化的次数，行从plane的base开始
+    private int transitions(long[] plane, int base) {
+        int count = 0;
+        long carry = 0;    // 上一个long的最高位，移入本字的第0位
+        for (int w = 0; w < stride; w++) {
+            long row = plane[base + w];
+            count += Long.bitCount((row ^ (row << 1 | carry)) & transitionMask[w]);
+            carry = row >>> 63;
+        }
+        return count;
+    }
+
+    /**
+     * 方块的一行掩码放入占用平面的一行之后，这一行的行变换数的变化
+     * 只有方块格子所在的相邻对会变，取出第shift - 1位起的6位比较放入前后即可，与宽度无关；
+     * 平面中已经放入方块（onPlace）或尚未放入（evaluate）都可以
+     * @param base 这一行在占用平面中的起始下标
+     */
+    private int transitionDelta(int base, int mask, int shift) {
+        int window = window(rows, base, shift - 1, FULL_WORD);
+        int valid = window(transitionMask, 0, shift - 1, 0);
+        int piece = mask << 1;
+        int after = window | piece;
+        int before = window & ~piece;
+        return Integer.bitCount((after ^ (after << 1)) & valid) - Integer.bitCount((before ^ (before << 1)) & valid);
+    }
+
+    /**
+     * 取出一行中从第from位开始的6位，超出这一行的位取outside中的值
+     * @param from 起始位，不小于-1
+     */
+    private int window(long[] plane, int base, int from, long outside) {
+        long bits;
+        if (from < 0) {
+            bits = plane[base] << 1 | (outside & 1);
+        } else {
+            int word = from >>> 6;
+            int bit = from & 63;
+            bits = plane[base + word] >>> bit;
+            if (bit > 58) {
+                bits |= (word + 1 < stride ? plane[base + word + 1] : outside) << (64 - bit);
+            }
+        }
+        return (int) bits & 0x3F;
+    }
+
+    /**
+     * 计算方块从y0下落后固定的y坐标
+     * 方块在它占据的每一列都位于该列最高方块之上时，用底部轮廓对照列高一遍算出；
+     * 钻到悬空方块下面时才退回逐行检测，与GameBoard.getDropDistance相同
+     */
+    private int landingRow(int[] masks, int[] bottom, int x, int y0) {
+        int landing = Integer.MAX_VALUE;
+        for (int dx = 0; dx < bottom.length; dx++) {
+            if (bottom[dx] >= 0) {
+                int top = height - heights[x + dx];
+                if (y0 + bottom[dx] >= top) {
+                    int y = y0;
+                    while (fits(masks, x, y + 1)) {
+                        y++;
+                    }
+                    return y;
+                }
+                landing = Math.min(landing, top - 1 - bottom[dx]);
+            }
+        }
+        return landing;
+    }
+
+    //检查形状能否放在指定位置，与GameBoard.canPlace相同
+    private boolean fits(int[] masks, int x, int y) {
+        int shift = x + GameBoard.WALL_BITS;
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0) {
+                int row = y + i;
+                if (row >= height) {
+                    return false;
+                }
+                if (row >= 0 ? GameBoard.overlaps(rows, row * stride, masks[i], shift)
+                        : GameBoard.overlaps(emptyRow, 0, masks[i], shift)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    //方块是否有格子在顶部之外
+    private static boolean aboveTop(int[] masks, int y) {
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0 && y + i < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 自顶向下按位并行扫描一遍（可以叠加一个假设的方块并跳过它填满的行），计算所有特征
+     * seen 记录已经遇到过方块的列，某列在 seen 中的每一行都计入它的高度，据此：
+     * 总高度为各行 seen 的位数之和，空洞为 seen 中本行为空的位数，
+     * 凹凸度为相邻两列一列在 seen 中、另一列不在的行数，井深为本列不在 seen 中而两侧都在（墙壁总在）的行数。
+     * 每行按long逐字计算，相邻列跨越两个字时由前后字的边界位补上。
+     * @param masks 假设的方块行掩码，null表示不叠加
+     * @param heightsOut 非null时写入每列高度
+     * @return 消除的行数
+     */
+    private int scan(int[] masks, int shift, int y, int[] out, int[] heightsOut) {
+        int lines = 0;
+        if (masks != null) {
+            for (int i = 0; i < masks.length; i++) {
+                if (masks[i] != 0 && GameBoard.isFullWith(rows, (y + i) * stride, stride, masks[i], shift)) {
+                    lines++;
+                }
+            }
+        }
+        if (heightsOut != null) {
+            Arrays.fill(heightsOut, 0);
+        }
+        long[] buffer = scanBuffer();
+        long[] seen = buffer;          // 前stride个long
+        long[] overlay = buffer;       // 后stride个long：叠加了方块的行
+        int overlayBase = stride;
+        boolean anySeen = false;
+        int level = height - lines;    // 当前行消行后的高度（到底部的格数）
+        int aggregate = 0;
+        int max = 0;
+        int holes = 0;
+        int bump = 0;
+        int wellSum = 0;
+        int transitions = 2 * lines;   // 顶部补入的空行
+        for (int r = 0; r < height; r++) {
+            long[] plane = rows;
+            int base = r * stride;
+            int i = r - y;
+            if (masks != null && i >= 0 && i < masks.length && masks[i] != 0) {
+                System.arraycopy(rows, base, overlay, overlayBase, stride);
+                GameBoard.set(overlay, overlayBase, masks[i], shift);
+                // 只跳过因方块而满、已计入lines的行；不叠加方块时满行尚未消除，照常计入
+                if (GameBoard.isFull(overlay, overlayBase, stride)) {
+                    continue;
+                }
+                plane = overlay;
+                base = overlayBase;
+            }
+            boolean anyFilled = false;
+            for (int w = 0; w < stride; w++) {
+                long filled = plane[base + w] & fieldMask[w];
+                if (filled != 0) {
+                    anyFilled = true;
+                    if (heightsOut != null) {
+                        for (long fresh = filled & ~seen[w]; fresh != 0; fresh &= fresh - 1) {
+                            heightsOut[(w << 6) + Long.numberOfTrailingZeros(fresh) - GameBoard.WALL_BITS] = level;
+                        }
+                    }
+                    seen[w] |= filled;
+                }
+            }
+            if (anyFilled && !anySeen) {
+                max = level;
+                anySeen = true;
+            }
+            if (anySeen) {
+                long solidCarry = 1;    // 上一个字的最高位（第0字左侧视为墙壁）
+                for (int w = 0; w < stride; w++) {
+                    long s = seen[w];
+                    long filled = plane[base + w] & fieldMask[w];
+                    long next = w + 1 < stride ? seen[w + 1] : 0;
+                    long solid = s | emptyRow[w];
+                    long nextSolid = w + 1 < stride ? next | emptyRow[w + 1] : FULL_WORD;
+                    aggregate += Long.bitCount(s);
+                    holes += Long.bitCount(s & ~filled);
+                    bump += Long.bitCount((s ^ (s >>> 1 | next << 63)) & pairMask[w]);
+                    wellSum += Long.bitCount(~solid & (solid << 1 | solidCarry) & (solid >>> 1 | nextSolid << 63));
+                    solidCarry = solid >>> 63;
+                }
+            }
+            transitions += transitions(plane, base);
+            level--;
+        }
+        out[AGGREGATE_HEIGHT] = aggregate;
+        out[MAX_HEIGHT] = max;
+        out[HOLES] = holes;
+        out[BUMPINESS] = bump;
+        out[ROW_TRANSITIONS] = transitions;
+        out[WELLS] = wellSum;
+        out[LINES] = lines;
+        return lines;
+    }
+
+    //取本线程的scan工作区并把seen部分清零，不够大时换成更大的
+    private long[] scanBuffer() {
+        long[] buffer = SCAN_BUFFER.get();
+        if (buffer.length < 2 * stride) {
+            buffer = new long[2 * stride];
+            SCAN_BUFFER.set(buffer);
+        } else {
+            Arrays.fill(buffer, 0, stride, 0L);
+        }
+        return buffer;
+    }
+
+    private void checkDetached() {
+        if (attached) {
+            throw new IllegalStateException("与游戏区域共享的特征只能由GameBoard更新");
+        }
+    }
+
+    /**
+     * 把当前局面的特征写入数组
+     * @param out 长度至少为COUNT，LINES项为0
+     */
+    public void copyTo(int[] out) {
+        out[AGGREGATE_HEIGHT] = aggregateHeight;
+        out[MAX_HEIGHT] = maxHeight;
+        out[HOLES] = getHoles();
+        out[BUMPINESS] = bumpiness;
+        out[ROW_TRANSITIONS] = rowTransitions;
+        out[WELLS] = wells;
+        out[LINES] = 0;
+    }
+
+    //所有列高度之和
+    public int getAggregateHeight() {
+        return aggregateHeight;
+    }
+
+    //最高的列高
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    //空洞数
+    public int getHoles() {
+        return aggregateHeight - cells;
+    }
+
+    //相邻列高度差之和
+    public int getBumpiness() {
+        return bumpiness;
+    }
+
+    //行变换数
+    public int getRowTransitions() {
+        return rowTransitions;
+    }
+
+    //井深之和
+    public int getWells() {
+        return wells;
+    }
+
+    //第x列的高度
+    public int getColumnHeight(int x) {
+        return heights[x];
+    }
+
+    //获取占用平面，供搜索枚举落点，不得修改
+    long[] rows() {
+        return rows;
+    }
+
+    //获取空行（只有墙壁位为1），不得修改
+    long[] emptyRow() {
+        return emptyRow;
+    }
+}
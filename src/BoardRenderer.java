@@ -0,0 +1,210 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * 游戏区域绘制类
+ * 负责把游戏画面快照（GameSnapshot）绘制到屏幕上，使游戏逻辑本身不依赖AWT
+ *
+ * 网格线和已固定的方块预先画在离屏图像中，只有快照的已固定方块变化（placeBlock/clearLines）时才重画；
+ * 每帧只需整体贴图，再画落点预览和当前方块。pieceBounds 给出当前方块及其落点预览覆盖的区域，
+ * 面板据此只重绘方块移动前后的脏矩形。
+ *
+ * createTileAtlas 把空格、7种颜色的方块和落点轮廓各画一次，排成一行图块，
+ * 需要同时绘制大量棋盘的界面（观战墙）逐格整块贴图，不再逐格设置颜色和画矩形。
+ */
+public class BoardRenderer {
+    private static final Color[] COLORS = {
+        Color.CYAN, Color.BLUE, Color.ORANGE, Color.YELLOW,
+        Color.GREEN, Color.MAGENTA, Color.RED
+    };
+    private static final Color GRID_COLOR = new Color(50, 50, 50);
+    private static final int PREVIEW_SLOT_COLUMNS = 5;   // 每个预览方块占用的槽位宽度（格）
+    private static final int PREVIEW_SLOT_ROWS = 3;      // 每个预览方块占用的槽位高度（格）
+    public static final int EMPTY_TILE = 0;              // 图集中空格（带网格线）的下标，1-7为对应颜色编号的方块
+    public static final int GHOST_TILE = 8;              // 图集中落点轮廓的下标
+    public static final int TILE_COUNT = 9;              // 图集中的图块个数
+
+    private BufferedImage cache;         // 网格和已固定方块的离屏图像
+    private GameSnapshot cachedSnapshot; // 缓存对应的快照
+    private int cachedBlockSize;         // 缓存对应的方块大小
+
+    /**
+     * 绘制游戏区域
+     * @param g2d 图形上下文
+     * @param snapshot 游戏画面快照
+     * @param blockSize 方块大小（像素）
+     */
+    public void draw(Graphics2D g2d, GameSnapshot snapshot, int blockSize) {
+        if (cache == null || !snapshot.sameCells(cachedSnapshot) || cachedBlockSize != blockSize) {
+            renderCache(snapshot, blockSize);
+        }
+        g2d.drawImage(cache, 0, 0, null);
+
+        // 绘制落点预览（只画轮廓）
+        int[] cells = snapshot.getPieceCells();
+        int ghostY = snapshot.getPieceY() + snapshot.getDropDistance();
+        g2d.setColor(Color.GRAY);
+        for (int k = 0; k < cells.length; k += 2) {
+            int y = ghostY + cells[k + 1];
+            if (y >= 0) {
+                g2d.drawRect((snapshot.getPieceX() + cells[k]) * blockSize + 1, y * blockSize + 1, blockSize - 2, blockSize - 2);
+            }
+        }
+
+        // 绘制当前方块
+        for (int k = 0; k < cells.length; k += 2) {
+            int x = snapshot.getPieceX() + cells[k];
+            int y = snapshot.getPieceY() + cells[k + 1];
+            if (y >= 0) {
+                drawBlock(g2d, x, y, snapshot.getPieceColor(), blockSize);
+            }
+        }
+    }
+
+    /**
+     * 计算当前方块和落点预览覆盖的像素区域（包含方块边框多出的1像素）
+     * @param snapshot 游戏画面快照
+     * @param blockSize 方块大小（像素）
+     * @param bounds 用于保存结果的矩形，避免每帧分配
+     * @return bounds
+     */
+    public Rectangle pieceBounds(GameSnapshot snapshot, int blockSize, Rectangle bounds) {
+        int[] cells = snapshot.getPieceCells();
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int k = 0; k < cells.length; k += 2) {
+            minX = Math.min(minX, cells[k]);
+            maxX = Math.max(maxX, cells[k]);
+            minY = Math.min(minY, cells[k + 1]);
+            maxY = Math.max(maxY, cells[k + 1]);
+        }
+        int top = Math.max(0, snapshot.getPieceY() + minY);
+        int bottom = snapshot.getPieceY() + snapshot.getDropDistance() + maxY;
+        bounds.setBounds((snapshot.getPieceX() + minX) * blockSize, top * blockSize,
+            (maxX - minX + 1) * blockSize + 1, (bottom - top + 1) * blockSize + 1);
+        return bounds;
+    }
+
+    /**
+     * 绘制接下来的方块预览，从上到下排列，每个方块以初始朝向在自己的槽位中居中
+     * @param g2d 图形上下文
+     * @param snapshot 游戏画面快照
+     * @param count 预览的方块个数
+     * @param blockSize 方块大小（像素）
+     */
+    public void drawPreview(Graphics2D g2d, GameSnapshot snapshot, int count, int blockSize) {
+        for (int i = 0; i < count; i++) {
+            int type = snapshot.getPreviewType(i);
+            int[] cells = Block.cellsOf(type, 0);
+            int minX = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int k = 0; k < cells.length; k += 2) {
+                minX = Math.min(minX, cells[k]);
+                maxX = Math.max(maxX, cells[k]);
+                minY = Math.min(minY, cells[k + 1]);
+                maxY = Math.max(maxY, cells[k + 1]);
+            }
+            int left = ((PREVIEW_SLOT_COLUMNS - (maxX - minX + 1)) * blockSize) / 2 - minX * blockSize;
+            int top = i * PREVIEW_SLOT_ROWS * blockSize
+                + ((PREVIEW_SLOT_ROWS - (maxY - minY + 1)) * blockSize) / 2 - minY * blockSize;
+            for (int k = 0; k < cells.length; k += 2) {
+                drawBlockAt(g2d, left + cells[k] * blockSize, top + cells[k + 1] * blockSize, type + 1, blockSize);
+            }
+        }
+    }
+
+    /**
+     * 预览区域所需的像素大小
+     * @param count 预览的方块个数
+     * @param blockSize 方块大小（像素）
+     */
+    public static Dimension previewSize(int count, int blockSize) {
+        return new Dimension(PREVIEW_SLOT_COLUMNS * blockSize + 1, count * PREVIEW_SLOT_ROWS * blockSize + 1);
+    }
+
+    /**
+     * 生成图块图集：宽 TILE_COUNT * blockSize、高 blockSize 的图像，第i块位于横坐标 i * blockSize
+     * 空格和落点轮廓只画左边和上边的网格线，拼在一起时与 draw 画出的网格一致（右边和下边的边线由调用方补上）
+     * @param blockSize 方块大小（像素）
+     * @return 图集
+     */
+    public static BufferedImage createTileAtlas(int blockSize) {
+        BufferedImage atlas = new BufferedImage(TILE_COUNT * blockSize, blockSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = atlas.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, atlas.getWidth(), atlas.getHeight());
+        for (int tile : new int[] {EMPTY_TILE, GHOST_TILE}) {
+            int px = tile * blockSize;
+            g2d.setColor(GRID_COLOR);
+            g2d.drawLine(px, 0, px + blockSize - 1, 0);
+            g2d.drawLine(px, 0, px, blockSize - 1);
+        }
+        g2d.setColor(Color.GRAY);
+        g2d.drawRect(GHOST_TILE * blockSize + 1, 1, blockSize - 2, blockSize - 2);
+        for (int color = 1; color <= COLORS.length; color++) {
+            g2d.setClip(color * blockSize, 0, blockSize, blockSize);   // 方块边框多出的1像素不画到下一块上
+            drawBlockAt(g2d, color * blockSize, 0, color, blockSize);
+        }
+        g2d.dispose();
+        return atlas;
+    }
+
+    /**
+     * 重画离屏图像：背景、网格线和所有已固定的方块
+     */
+    private void renderCache(GameSnapshot snapshot, int blockSize) {
+        int pixelWidth = snapshot.getWidth() * blockSize;
+        int pixelHeight = snapshot.getHeight() * blockSize;
+        if (cache == null || cache.getWidth() != pixelWidth + 1 || cache.getHeight() != pixelHeight + 1) {
+            cache = new BufferedImage(pixelWidth + 1, pixelHeight + 1, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g2d = cache.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, cache.getWidth(), cache.getHeight());
+
+        // 绘制网格线
+        g2d.setColor(GRID_COLOR);
+        for (int i = 0; i <= snapshot.getWidth(); i++) {
+            g2d.drawLine(i * blockSize, 0, i * blockSize, pixelHeight);
+        }
+        for (int i = 0; i <= snapshot.getHeight(); i++) {
+            g2d.drawLine(0, i * blockSize, pixelWidth, i * blockSize);
+        }
+
+        // 绘制已放置的方块
+        for (int i = 0; i < snapshot.getHeight(); i++) {
+            for (int j = 0; j < snapshot.getWidth(); j++) {
+                if (snapshot.getCell(j, i) != 0) {
+                    drawBlock(g2d, j, i, snapshot.getCell(j, i), blockSize);
+                }
+            }
+        }
+        g2d.dispose();
+        cachedSnapshot = snapshot;
+        cachedBlockSize = blockSize;
+    }
+
+    /**
+     * 绘制单个方块
+     * @param g2d 图形上下文
+     * @param x 方块的x坐标
+     * @param y 方块的y坐标
+     * @param color 方块的颜色编号
+     * @param blockSize 方块大小（像素）
+     */
+    private void drawBlock(Graphics2D g2d, int x, int y, int color, int blockSize) {
+        drawBlockAt(g2d, x * blockSize, y * blockSize, color, blockSize);
+    }
+
+    //在像素坐标(px, py)处绘制单个方块
+    private static void drawBlockAt(Graphics2D g2d, int px, int py, int color, int blockSize) {
+        g2d.setColor(COLORS[color - 1]);
+        g2d.fillRect(px, py, blockSize, blockSize);
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(px, py, blockSize, blockSize);
+    }
+}
@@ -27,6 +27,11 @@ public class DifficultyManager {
         10000   // 大师：10000分
     };
     
+    /**
+     * 不同难度等级的名称
+     */
+    private static final String[] LEVEL_NAMES = {"简单", "中等", "困难", "专家", "大师"};
+    
     private int currentLevel;  // 当前难度等级（0-4）
     
     /**
@@ -74,7 +79,39 @@ public class DifficultyManager {
     
     //获取当前难度等级的名称
     public String getCurrentLevel() {
-        String[] levelNames = {"简单", "中等", "困难", "专家", "大师"};
-        return levelNames[currentLevel];
+        return LEVEL_NAMES[currentLevel];
+    }
+    
+    /**
+     * 直接设置难度等级，用于恢复局面快照
+     * @param level 难度等级（0-4）
+     */
+    void setLevelIndex(int level) {
+        currentLevel = Math.max(0, Math.min(SPEEDS.length - 1, level));
+    }
+    
+    //获取当前难度等级（0-4）
+    public int getLevelIndex() {
+        return currentLevel;
+    }
+    
+    //获取难度等级的个数
+    public static int getLevelCount() {
+        return LEVEL_NAMES.length;
+    }
+    
+    //获取指定难度等级的名称
+    public static String getLevelName(int level) {
+        return LEVEL_NAMES[level];
+    }
+    
+    //根据名称查找难度等级，找不到时返回-1
+    public static int levelOf(String name) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
     }
 } 
\ No newline at end of file
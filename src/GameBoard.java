@@ -1,37 +1,100 @@
-import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
  * 游戏面板类
  * 负责管理游戏区域、方块的放置和移动、消行等核心游戏逻辑
+ * 
+ * 游戏区域使用位棋盘表示：每一行用 wordsPerRow(width) 个long作为占用位掩码（宽度不超过58时只有一个），
+ * 第x列对应这一行的第(x + WALL_BITS)位，左右两侧多余的位始终置1作为墙壁，
+ * 因此碰撞检测只需移位与按位与（方块的一行最多4位，至多跨越两个相邻的long），
+ * 满行判断只需检查这一行的每个long是否全为1，耗时与宽度/64成正比，与格子数无关。
+ * board数组仅作为颜色平面保存每个格子的颜色，用于绘制。
+ *
+ * snapshot 生成不可变的局面快照，颜色平面按行写时复制：快照与游戏区域共享所有行数组，
+ * 之后游戏区域第一次修改某一行时才复制这一行，因此拍快照和恢复都不复制格子，
+ * 只复制行引用、占用掩码和列高这几个很短的数组。
  */
 public class GameBoard {
-    private int[][] board;        // 游戏区域，存储已放置的方块
+    static final int WALL_BITS = 3;                            // 左侧墙壁位数（方块形状最多有3列前导空列）
+    private static final long FULL_WORD = -1L;                 // 所有位均为1的字
+    public static final int MAX_WIDTH = 1024;                  // 支持的最大宽度
+    public static final int MAX_HEIGHT = 8192;                 // 支持的最大高度
+    
+    private int[][] board;        // 颜色平面，存储已放置方块的颜色
+    private long[] rows;          // 占用平面，第y行是从y * stride开始的stride个long（含墙壁位）
+    private int stride;           // 每行的long个数
+    private long[] emptyRow;      // 空行，只有墙壁位为1
+    private long version;         // 已固定方块的版本号，每次placeBlock/clearLines改变局面时递增，供绘制缓存判断是否失效
+    private int[] columnHeights;  // 每列的高度（最高方块到底部的格数，空列为0），随placeBlock和clearLines增量更新
+    private final BoardFeatures features;   // 局面评估特征，与本对象共享占用平面和列高，随局面变化增量更新
     private Block currentBlock;   // 当前正在下落的方块
     private int width;            // 游戏区域宽度
     private int height;           // 游戏区域高度
-    private Random random;        // 随机数生成器，用于生成新方块
+    private PieceSource pieces;   // 方块序列，也供预览和自动演示预判
+    private int[] rowEpoch;       // 每个颜色行数组属于哪个写时复制周期，与board的行一起移动
+    private int epoch;            // 当前写时复制周期，每次拍快照或恢复时递增，此前的行都可能被快照共享
     
     /**
      * 构造函数
+     * 方块序列使用随机种子，无法重现
      * @param width 游戏区域宽度
      * @param height 游戏区域高度
      */
     public GameBoard(int width, int height) {
+        this(width, height, new Random().nextLong());
+    }
+    
+    /**
+     * 构造函数
+     * 使用7袋随机方块序列，相同的种子总是生成相同的方块序列，用于录像回放和可重现的模拟
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param seed 方块序列的随机种子
+     */
+    public GameBoard(int width, int height, long seed) {
+        this(width, height, new SevenBagSource(seed));
+    }
+    
+    /**
+     * 构造函数
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param pieces 方块序列来源
+     */
+    public GameBoard(int width, int height, PieceSource pieces) {
+        if (width < 4 || width > MAX_WIDTH) {
+            throw new IllegalArgumentException("游戏区域宽度必须在4到" + MAX_WIDTH + "之间: " + width);
+        }
+        if (height < 4 || height > MAX_HEIGHT) {
+            throw new IllegalArgumentException("游戏区域高度必须在4到" + MAX_HEIGHT + "之间: " + height);
+        }
         this.width = width;
         this.height = height;
         this.board = new int[height][width];
-        this.random = new Random();
+        this.rowEpoch = new int[height];
+        this.stride = wordsPerRow(width);
+        this.emptyRow = emptyRow(width);
+        this.rows = new long[height * stride];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(emptyRow, 0, rows, y * stride, stride);
+        }
+        this.columnHeights = new int[width];
+        this.features = new BoardFeatures(width, height, rows, columnHeights);
+        this.pieces = pieces;
+        this.currentBlock = new Block(0);
         spawnNewBlock();    //生成新的方块
     }
     
     /**
      * 生成新的方块
-     * 随机选择一种方块类型，并将其放置在游戏区域顶部中央
+     * 从方块序列取出下一种方块，并将其放置在游戏区域顶部中央
+     * 复用同一个Block对象，避免每个方块都分配新对象
      */
     public void spawnNewBlock() {
-        currentBlock = new Block(random.nextInt(7));
-        currentBlock.setPosition(width / 2 - 1, 0);
+        currentBlock.reset(pieces.next());
+        currentBlock.setPosition(getSpawnX(), 0);
     }
     
     /**
@@ -72,22 +135,61 @@ public class GameBoard {
     
     /**
      * 尝试旋转当前方块
-     * 如果旋转后位置无效，则恢复原状
+     * 先用下一个旋转状态的行掩码检测，只有位置有效时才真正旋转
+     * @return 如果旋转成功返回true，否则返回false
      */
-    public void rotate() {
-        currentBlock.rotate();
-        if (!canMove(currentBlock.getX(), currentBlock.getY())) {
-            currentBlock.rotateBack();
+    public boolean rotate() {
+        int[] next = currentBlock.getRowMasks(currentBlock.getRotation() + 1);
+        if (canPlace(next, currentBlock.getX(), currentBlock.getY())) {
+            currentBlock.rotate();
+            return true;
         }
+        return false;
     }
     
     /**
      * 将当前方块快速下落到底部
+     * @return 下落的行数
+     */
+    public int dropDown() {
+        int distance = getDropDistance();
+        currentBlock.setPosition(currentBlock.getX(), currentBlock.getY() + distance);
+        return distance;
+    }
+    
+    /**
+     * 计算当前方块还能下落的行数，用于快速下落和绘制落点预览
+     * 方块在它占据的每一列都位于该列最高方块之上时，只需用方块底部轮廓对照列高一遍算出；
+     * 方块钻到悬空方块下面时才退回逐行碰撞检测。
+     * @return 下落的行数
      */
-    public void dropDown() {
-        while (moveDown()) {
-            // 继续下落直到不能移动
+    public int getDropDistance() {
+        int x = currentBlock.getX();
+        int y = currentBlock.getY();
+        int[] bottom = currentBlock.getBottomProfile();
+        int landing = Integer.MAX_VALUE;
+        for (int dx = 0; dx < bottom.length; dx++) {
+            if (bottom[dx] >= 0) {
+                int top = height - columnHeights[x + dx];    // 该列最高方块所在行，空列为height
+                if (y + bottom[dx] >= top) {
+                    return scanDropDistance();
+                }
+                landing = Math.min(landing, top - 1 - bottom[dx]);
+            }
         }
+        return landing - y;
+    }
+    
+    /**
+     * 逐行检测碰撞计算下落行数
+     * @return 下落的行数
+     */
+    private int scanDropDistance() {
+        int distance = 0;
+        while (canMove(currentBlock.getX(), currentBlock.getY() + distance + 1)) {
+            distance++;
+        }
+        return distance;
     }
     
     /**
@@ -96,66 +198,211 @@ public class GameBoard {
      * @param newY 目标y坐标
      * @return 如果可以移动返回true，否则返回false
      */
-    private boolean canMove(int newX, int newY) {
-        int[][] shape = currentBlock.getShape();
-        for (int i = 0; i < shape.length; i++) {
-            for (int j = 0; j < shape[i].length; j++) {
-                if (shape[i][j] != 0) {
-                    int x = newX + j;
-                    int y = newY + i;
-                    if (x < 0 || x >= width || y >= height || (y >= 0 && board[y][x] != 0)) {
-                        return false;
-                    }
+    boolean canMove(int newX, int newY) {
+        return canPlace(currentBlock.getRowMasks(), newX, newY);
+    }
+    
+    /**
+     * 检查给定行掩码的形状能否放在指定位置
+     * @param masks 形状的行掩码
+     * @param newX 目标x坐标
+     * @param newY 目标y坐标
+     * @return 如果位置有效返回true，否则返回false
+     */
+    private boolean canPlace(int[] masks, int newX, int newY) {
+        int shift = newX + WALL_BITS;
+        if (shift < 0 || newX > width) {
+            return false;    // 非空形状必然有格子越过左右边界
+        }
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0) {
+                int y = newY + i;
+                if (y >= height) {
+                    return false;
                 }
+                if (y >= 0 ? overlaps(rows, y * stride, masks[i], shift) : overlaps(emptyRow, 0, masks[i], shift)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 每行占用的long个数：左侧WALL_BITS位墙壁，然后是width位棋盘，右侧至少还有WALL_BITS + 1位墙壁，
+     * 这样从合法位置右移一格或原地旋转后的形状总是落在这一行之内
+     * @param width 游戏区域宽度
+     */
+    static int wordsPerRow(int width) {
+        return (width + 2 * WALL_BITS + 1 + 63) >>> 6;
+    }
+    
+    /**
+     * 生成只有墙壁位为1的空行
+     * @param width 游戏区域宽度
+     * @return wordsPerRow(width)个long
+     */
+    static long[] emptyRow(int width) {
+        long[] row = new long[wordsPerRow(width)];
+        Arrays.fill(row, FULL_WORD);
+        for (int b = WALL_BITS; b < WALL_BITS + width; b++) {
+            row[b >>> 6] &= ~(1L << b);
+        }
+        return row;
+    }
+    
+    /**
+     * 形状的一行掩码（最多4位）左移shift位后，是否与平面中从base开始的那一行重叠
+     * @param plane 占用平面
+     * @param base 这一行第一个long的下标
+     * @param mask 形状的行掩码
+     * @param shift 左移位数（x + WALL_BITS），不能为负
+     */
+    static boolean overlaps(long[] plane, int base, int mask, int shift) {
+        int word = base + (shift >>> 6);
+        int bit = shift & 63;
+        if ((plane[word] & ((long) mask << bit)) != 0) {
+            return true;
+        }
+        return bit > 60 && (plane[word + 1] & ((long) mask >>> (64 - bit))) != 0;
+    }
+    
+    /**
+     * 把形状的一行掩码左移shift位后写入平面中从base开始的那一行
+     */
+    static void set(long[] plane, int base, int mask, int shift) {
+        int word = base + (shift >>> 6);
+        int bit = shift & 63;
+        plane[word] |= (long) mask << bit;
+        if (bit > 60) {
+            plane[word + 1] |= (long) mask >>> (64 - bit);
+        }
+    }
+    
+    /**
+     * 平面中从base开始的那一行是否已满
+     * @param stride 每行的long个数
+     */
+    static boolean isFull(long[] plane, int base, int stride) {
+        for (int w = 0; w < stride; w++) {
+            if (plane[base + w] != FULL_WORD) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 平面中从base开始的那一行写入形状的一行掩码之后是否已满，不修改平面
+     */
+    static boolean isFullWith(long[] plane, int base, int stride, int mask, int shift) {
+        int word = shift >>> 6;
+        int bit = shift & 63;
+        for (int w = 0; w < stride; w++) {
+            long row = plane[base + w];
+            if (w == word) {
+                row |= (long) mask << bit;
+            } else if (w == word + 1 && bit > 60) {
+                row |= (long) mask >>> (64 - bit);
+            }
+            if (row != FULL_WORD) {
+                return false;
             }
         }
         return true;
     }
     
+    //第y行第x列是否有方块（按占用平面）
+    private boolean occupied(int x, int y) {
+        int b = x + WALL_BITS;
+        return (rows[y * stride + (b >>> 6)] & (1L << b)) != 0;
+    }
+    
     //将当前方块放置到游戏区域中
     //放置后生成新的方块
     public void placeBlock() {
-        int[][] shape = currentBlock.getShape();
-        for (int i = 0; i < shape.length; i++) {
-            for (int j = 0; j < shape[i].length; j++) {
-                if (shape[i][j] != 0) {
-                    int x = currentBlock.getX() + j;
-                    int y = currentBlock.getY() + i;
-                    if (y >= 0) {
-                        board[y][x] = currentBlock.getColor();
+        int[] masks = currentBlock.getRowMasks();
+        int shift = currentBlock.getX() + WALL_BITS;
+        int color = currentBlock.getColor();
+        for (int i = 0; i < masks.length; i++) {
+            int y = currentBlock.getY() + i;
+            if (masks[i] != 0 && y >= 0) {
+                set(rows, y * stride, masks[i], shift);
+                int[] colors = writableRow(y);
+                for (int bits = masks[i]; bits != 0; bits &= bits - 1) {
+                    int x = currentBlock.getX() + Integer.numberOfTrailingZeros(bits);
+                    colors[x] = color;
+                    if (columnHeights[x] < height - y) {
+                        columnHeights[x] = height - y;
                     }
                 }
             }
         }
+        features.onPlace(masks, currentBlock.getX(), currentBlock.getY());
+        version++;
         spawnNewBlock();
     }
     
+    /**
+     * 获取可以修改的颜色行：该行可能被快照共享时先复制一份
+     * @param y 行
+     * @return 本游戏区域独占的行数组
+     */
+    private int[] writableRow(int y) {
+        if (rowEpoch[y] != epoch) {
+            board[y] = board[y].clone();
+            rowEpoch[y] = epoch;
+        }
+        return board[y];
+    }
+    
     /**
      * 清除已填满的行
+     * 自底向上单遍压缩：保留的行下移到写入位置，被清除行的颜色数组交换到顶部后清零复用
+     * （被快照共享的行不清零，换成新数组）
      * @return 清除的行数
      */
     public int clearLines() {
         int linesCleared = 0;
-        for (int i = height - 1; i >= 0; i--) {
-            boolean isLineFull = true;
-            for (int j = 0; j < width; j++) {
-                if (board[i][j] == 0) {
-                    isLineFull = false;
-                    break;
-                }
-            }
-            if (isLineFull) {
+        int dst = height - 1;
+        for (int src = height - 1; src >= 0; src--) {
+            if (isFull(rows, src * stride, stride)) {
                 linesCleared++;
-                // 将上面的行向下移动
-                for (int k = i; k > 0; k--) {
-                    System.arraycopy(board[k-1], 0, board[k], 0, width);
-                }
-                // 清空最上面的行
-                for (int j = 0; j < width; j++) {
-                    board[0][j] = 0;
+                continue;
+            }
+            if (dst != src) {
+                System.arraycopy(rows, src * stride, rows, dst * stride, stride);
+                int[] tmp = board[dst];
+                board[dst] = board[src];
+                board[src] = tmp;
+                int tmpEpoch = rowEpoch[dst];
+                rowEpoch[dst] = rowEpoch[src];
+                rowEpoch[src] = tmpEpoch;
+            }
+            dst--;
+        }
+        // 清空顶部空出的行
+        for (; dst >= 0; dst--) {
+            System.arraycopy(emptyRow, 0, rows, dst * stride, stride);
+            if (rowEpoch[dst] == epoch) {
+                Arrays.fill(board[dst], 0);
+            } else {
+                board[dst] = new int[width];
+                rowEpoch[dst] = epoch;
+            }
+        }
+        if (linesCleared > 0) {
+            version++;
+            // 满行必然位于每列最高方块之下（或就是那一行），所以每列高度先减去消除的行数；
+            // 如果原来的最高方块恰好在被消除的行里，再向下找到新的最高方块
+            for (int x = 0; x < width; x++) {
+                int h = columnHeights[x] - linesCleared;
+                while (h > 0 && !occupied(x, height - h)) {
+                    h--;
                 }
-                i++; // 重新检查当前行，因为上面的行已经下移
+                columnHeights[x] = h;
             }
+            features.onClear(linesCleared);
         }
         return linesCleared;
     }
@@ -168,53 +415,324 @@ public class GameBoard {
         return !canMove(currentBlock.getX(), currentBlock.getY());
     }
     
+    //获取游戏区域宽度
+    public int getWidth() {
+        return width;
+    }
+    
+    //获取游戏区域高度
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * 获取指定格子的颜色编号
+     * @param x 列
+     * @param y 行
+     * @return 颜色编号（1-7），0表示空白
+     */
+    public int getCell(int x, int y) {
+        return board[y][x];
+    }
+    
+    /**
+     * 直接设置指定格子的颜色，同时更新占用平面
+     * 包内可见，用于构造基准测试和模拟所需的局面
+     * @param x 列
+     * @param y 行
+     * @param color 颜色编号（1-7），0表示清空
+     */
+    void setCell(int x, int y, int color) {
+        writableRow(y)[x] = color;
+        int b = x + WALL_BITS;
+        if (color != 0) {
+            rows[y * stride + (b >>> 6)] |= 1L << b;
+        } else {
+            rows[y * stride + (b >>> 6)] &= ~(1L << b);
+        }
+        features.rebuild();    // 同时重算列高
+        version++;
+    }
+    
+    /**
+     * 直接设置一整行的颜色，同时更新占用平面
+     * 包内可见，构造大局面时按行设置，只需重算一次特征，而不是每个格子一次
+     * @param y 行
+     * @param colors 每列的颜色编号（1-7），0表示空白，长度为宽度
+     */
+    void setRow(int y, int[] colors) {
+        System.arraycopy(colors, 0, writableRow(y), 0, width);
+        int base = y * stride;
+        System.arraycopy(emptyRow, 0, rows, base, stride);
+        for (int x = 0; x < width; x++) {
+            if (colors[x] != 0) {
+                int b = x + WALL_BITS;
+                rows[base + (b >>> 6)] |= 1L << b;
+            }
+        }
+        features.rebuild();    // 同时重算列高
+        version++;
+    }
+    
     /**
-     * 绘制游戏区域
-     * @param g2d 图形上下文
-     * @param blockSize 方块大小（像素）
+     * 把另一个同尺寸游戏区域的状态（已固定的方块和当前方块）复制到本对象，方块序列不复制
+     * 包内可见，用于基准测试在每次操作前恢复局面
+     * @param other 源游戏区域
      */
-    public void draw(Graphics2D g2d, int blockSize) {
-        // 绘制已放置的方块
+    void copyFrom(GameBoard other) {
+        System.arraycopy(other.rows, 0, rows, 0, rows.length);
+        System.arraycopy(other.columnHeights, 0, columnHeights, 0, width);
         for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                if (board[i][j] != 0) {
-                    drawBlock(g2d, j, i, board[i][j], blockSize);
+            System.arraycopy(other.board[i], 0, writableRow(i), 0, width);
+        }
+        features.rebuild();
+        version++;
+        Block src = other.currentBlock;
+        currentBlock.reset(src.getType());
+        currentBlock.setRotation(src.getRotation());
+        currentBlock.setPosition(src.getX(), src.getY());
+    }
+    
+    /**
+     * 不可变的局面快照：已固定的方块、当前方块和方块序列的状态
+     * 颜色行与拍快照时的游戏区域共享，游戏区域之后修改时会先复制，因此快照永远不变，
+     * 可以跨线程传递，也可以恢复到任意多个同尺寸的游戏区域。
+     */
+    public static final class Snapshot {
+        private final int[][] colors;     // 颜色行引用，行数组与游戏区域共享
+        private final long[] rows;
+        private final int[] columnHeights;
+        private final int blockType;
+        private final int blockRotation;
+        private final int blockX;
+        private final int blockY;
+        private final PieceSource pieces;   // 方块序列的副本，恢复时再复制一份
+
+        private Snapshot(GameBoard board) {
+            this.colors = board.board.clone();
+            this.rows = board.rows.clone();
+            this.columnHeights = board.columnHeights.clone();
+            Block block = board.currentBlock;
+            this.blockType = block.getType();
+            this.blockRotation = block.getRotation();
+            this.blockX = block.getX();
+            this.blockY = block.getY();
+            this.pieces = board.pieces.copy();
+        }
+
+        //decode 使用的构造函数
+        private Snapshot(int[][] colors, long[] rows, int[] columnHeights, int blockType, int blockRotation,
+                         int blockX, int blockY, PieceSource pieces) {
+            this.colors = colors;
+            this.rows = rows;
+            this.columnHeights = columnHeights;
+            this.blockType = blockType;
+            this.blockRotation = blockRotation;
+            this.blockX = blockX;
+            this.blockY = blockY;
+            this.pieces = pieces;
+        }
+
+        //encode 写出的字节数
+        int encodedBytes() {
+            return 2 + 2 + getWidth() * getHeight() + 1 + 1 + 2 + 2 + SevenBagSource.ENCODED_BYTES;
+        }
+
+        /**
+         * 把快照写入缓冲区，供对局检查点保存：每个格子的颜色一个字节，占用掩码和列高在读出时重新计算
+         * 只支持7袋随机方块序列
+         * @param buffer 剩余空间至少为 encodedBytes()
+         */
+        void encode(ByteBuffer buffer) {
+            if (!(pieces instanceof SevenBagSource)) {
+                throw new IllegalStateException("无法保存这种方块序列: " + pieces.getClass().getName());
+            }
+            buffer.putShort((short) getWidth());
+            buffer.putShort((short) getHeight());
+            for (int[] row : colors) {
+                for (int color : row) {
+                    buffer.put((byte) color);
                 }
             }
+            buffer.put((byte) blockType);
+            buffer.put((byte) blockRotation);
+            buffer.putShort((short) blockX);
+            buffer.putShort((short) blockY);
+            ((SevenBagSource) pieces).encode(buffer);
         }
-        
-        // 绘制当前方块
-        int[][] shape = currentBlock.getShape();
-        for (int i = 0; i < shape.length; i++) {
-            for (int j = 0; j < shape[i].length; j++) {
-                if (shape[i][j] != 0) {
-                    int x = currentBlock.getX() + j;
-                    int y = currentBlock.getY() + i;
-                    if (y >= 0) {
-                        drawBlock(g2d, x, y, currentBlock.getColor(), blockSize);
+
+        /**
+         * 从缓冲区读出 encode 写入的快照
+         * @param buffer 输入缓冲区
+         * @return 快照
+         * @throws IllegalArgumentException 内容不是合法的局面
+         */
+        static Snapshot decode(ByteBuffer buffer) {
+            int width = buffer.getShort();
+            int height = buffer.getShort();
+            if (width < 4 || width > MAX_WIDTH || height < 4 || height > MAX_HEIGHT) {
+                throw new IllegalArgumentException("快照尺寸不合法: " + width + "x" + height);
+            }
+            int stride = wordsPerRow(width);
+            long[] emptyRow = emptyRow(width);
+            int[][] colors = new int[height][width];
+            long[] rows = new long[height * stride];
+            int[] columnHeights = new int[width];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(emptyRow, 0, rows, y * stride, stride);
+                for (int x = 0; x < width; x++) {
+                    int color = buffer.get();
+                    if (color < 0 || color > 7) {
+                        throw new IllegalArgumentException("格子颜色不合法: " + color);
+                    }
+                    if (color != 0) {
+                        colors[y][x] = color;
+                        int b = x + WALL_BITS;
+                        rows[y * stride + (b >>> 6)] |= 1L << b;
+                        columnHeights[x] = Math.max(columnHeights[x], height - y);
                     }
                 }
             }
+            int blockType = buffer.get();
+            int blockRotation = buffer.get();
+            int blockX = buffer.getShort();
+            int blockY = buffer.getShort();
+            if (blockType < 0 || blockType > 6 || blockRotation < 0 || blockRotation > 3) {
+                throw new IllegalArgumentException("方块状态不合法: " + blockType + "/" + blockRotation);
+            }
+            return new Snapshot(colors, rows, columnHeights, blockType, blockRotation, blockX, blockY,
+                SevenBagSource.decode(buffer));
+        }
+
+        //游戏区域宽度
+        public int getWidth() {
+            return columnHeights.length;
+        }
+
+        //游戏区域高度
+        public int getHeight() {
+            return colors.length;
+        }
+
+        //当前方块的类型
+        public int getBlockType() {
+            return blockType;
+        }
+    }
+    
+    /**
+     * 构造函数：从快照创建一个新的游戏区域，之后与快照和其他游戏区域互不影响
+     * @param snapshot 局面快照
+     */
+    public GameBoard(Snapshot snapshot) {
+        this(snapshot.getWidth(), snapshot.getHeight(), snapshot.pieces.copy());
+        restore(snapshot);
+    }
+    
+    /**
+     * 拍摄当前局面的快照
+     * 只复制行引用、占用掩码、列高和方块序列的状态，颜色行在之后被修改时才复制；
+     * 复制的部分仍与高度和每行long数成正比，只是比逐格复制颜色平面小得多
+     * @return 不可变的快照
+     */
+    public Snapshot snapshot() {
+        epoch++;    // 现有的行从此被快照共享
+        return new Snapshot(this);
+    }
+    
+    /**
+     * 恢复到快照时的局面，快照本身不变，可以多次恢复
+     * 复制占用掩码和列高后重新扫描局面特征，开销为O(高度 × 每行long数)
+     * @param snapshot 同尺寸游戏区域的快照
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.getWidth() != width || snapshot.getHeight() != height) {
+            throw new IllegalArgumentException("快照尺寸不匹配: " + snapshot.getWidth() + "x" + snapshot.getHeight());
+        }
+        System.arraycopy(snapshot.colors, 0, board, 0, height);
+        epoch++;    // 恢复的行与快照共享
+        System.arraycopy(snapshot.rows, 0, rows, 0, rows.length);
+        System.arraycopy(snapshot.columnHeights, 0, columnHeights, 0, width);
+        currentBlock.reset(snapshot.blockType);
+        currentBlock.setRotation(snapshot.blockRotation);
+        currentBlock.setPosition(snapshot.blockX, snapshot.blockY);
+        pieces = snapshot.pieces.copy();
+        features.rebuild();
+        version++;
+    }
+    
+    /**
+     * 把颜色平面按行优先复制到给定数组，每行一次数组复制，供绘制快照使用
+     * @param dest 目标数组，长度至少为width * height
+     */
+    void copyColors(int[] dest) {
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(board[y], 0, dest, y * width, width);
+        }
+    }
+    
+    /**
+     * 获取指定列的高度
+     * @param x 列
+     * @return 最高方块到底部的格数，空列为0
+     */
+    public int getColumnHeight(int x) {
+        return columnHeights[x];
+    }
+    
+    /**
+     * 获取局面评估特征（总高度、空洞、凹凸度、行变换、井深等），随placeBlock和clearLines增量更新
+     * 返回的对象与本游戏区域绑定，只能在拥有游戏区域的线程上或局面不变时读取
+     */
+    public BoardFeatures getFeatures() {
+        return features;
+    }
+    
+    /**
+     * 计算已固定方块的哈希值（FNV-1a），用于核对回放结果
+     * @return 由每个格子的颜色决定的64位哈希值
+     */
+    public long contentHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                hash = (hash ^ board[y][x]) * 0x100000001b3L;
+            }
         }
+        return hash;
+    }
+    
+    //获取已固定方块的版本号，版本号不变说明除当前方块外局面没有变化
+    public long getVersion() {
+        return version;
+    }
+    
+    //获取下一个方块的类型（0-6）
+    public int getNextType() {
+        return pieces.peek(0);
     }
     
     /**
-     * 绘制单个方块
-     * @param g2d 图形上下文
-     * @param x 方块的x坐标
-     * @param y 方块的y坐标
-     * @param color 方块的颜色编号
-     * @param blockSize 方块大小（像素）
+     * 获取之后第ahead个方块的类型
+     * @param ahead 0表示下一个方块
+     * @return 方块类型（0-6）
      */
-    private void drawBlock(Graphics2D g2d, int x, int y, int color, int blockSize) {
-        Color[] colors = {
-            Color.CYAN, Color.BLUE, Color.ORANGE, Color.YELLOW,
-            Color.GREEN, Color.MAGENTA, Color.RED
-        };
-        
-        g2d.setColor(colors[color - 1]);
-        g2d.fillRect(x * blockSize, y * blockSize, blockSize, blockSize);
-        g2d.setColor(Color.BLACK);
-        g2d.drawRect(x * blockSize, y * blockSize, blockSize, blockSize);
+    public int getPreviewType(int ahead) {
+        return pieces.peek(ahead);
+    }
+    
+    //最多可以预览的方块个数
+    public int getPreviewLimit() {
+        return pieces.getPreviewLimit();
+    }
+    
+    //获取新方块出现的x坐标：居中，但4格宽的I方块也不能越过右边界
+    public int getSpawnX() {
+        return Math.min(width / 2 - 1, width - 4);
+    }
+    
+    //获取当前正在下落的方块
+    public Block getCurrentBlock() {
+        return currentBlock;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,369 @@
+import java.nio.ByteBuffer;
+
+/**
+ * 游戏引擎类
+ * 不依赖任何界面的核心游戏规则：方块生成、移动、固定、消行和计分。
+ * 界面（TetrisGame）和无界面的批量模拟（BatchRunner）都通过 apply/step 驱动同一个引擎。
+ */
+public class GameEngine {
+    
+    /**
+     * 玩家可执行的操作
+     */
+    public enum Action {
+        MOVE_LEFT,   // 向左移动
+        MOVE_RIGHT,  // 向右移动
+        SOFT_DROP,   // 加速下落一格
+        ROTATE,      // 顺时针旋转
+        HARD_DROP    // 快速下落到底部（在下一次step时固定）
+    }
+    
+    private final GameBoard gameBoard;                  // 游戏区域
+    private final ScoreManager scoreManager;            // 分数管理器
+    private final DifficultyManager difficultyManager;  // 难度管理器
+    private boolean gameOver;                           // 游戏结束标志
+    private long piecesLocked;                          // 已固定的方块数
+    private long linesCleared;                          // 已消除的总行数
+    private ReplayRecorder recorder;                    // 录像记录器，null表示不录像
+    private boolean branched;                           // 是否恢复过快照（撤销或练习分支），这样的对局无法回放
+    private SessionJournal journal;                     // 对局日志，null表示不记录
+    
+    /**
+     * 不可变的引擎快照：局面快照加上分数、难度和统计
+     */
+    public static final class Snapshot {
+        private final GameBoard.Snapshot board;
+        private final int score;
+        private final int level;
+        private final long piecesLocked;
+        private final long linesCleared;
+        private final boolean gameOver;
+        
+        private Snapshot(GameEngine engine) {
+            this.board = engine.gameBoard.snapshot();
+            this.score = engine.scoreManager.getScore();
+            this.level = engine.difficultyManager.getLevelIndex();
+            this.piecesLocked = engine.piecesLocked;
+            this.linesCleared = engine.linesCleared;
+            this.gameOver = engine.gameOver;
+        }
+        
+        //decode 使用的构造函数
+        private Snapshot(GameBoard.Snapshot board, int score, int level, long piecesLocked, long linesCleared) {
+            this.board = board;
+            this.score = score;
+            this.level = level;
+            this.piecesLocked = piecesLocked;
+            this.linesCleared = linesCleared;
+            this.gameOver = false;
+        }
+        
+        //encode 写出的字节数
+        int encodedBytes() {
+            return board.encodedBytes() + 4 + 1 + 8 + 8;
+        }
+        
+        /**
+         * 把快照写入缓冲区，供对局检查点保存
+         * @param buffer 剩余空间至少为 encodedBytes()
+         */
+        void encode(ByteBuffer buffer) {
+            board.encode(buffer);
+            buffer.putInt(score);
+            buffer.put((byte) level);
+            buffer.putLong(piecesLocked);
+            buffer.putLong(linesCleared);
+        }
+        
+        /**
+         * 从缓冲区读出 encode 写入的快照，只保存进行中的对局，读出的快照总是未结束
+         * @param buffer 输入缓冲区
+         * @return 快照
+         */
+        static Snapshot decode(ByteBuffer buffer) {
+            return new Snapshot(GameBoard.Snapshot.decode(buffer), buffer.getInt(), buffer.get(),
+                buffer.getLong(), buffer.getLong());
+        }
+        
+        public GameBoard.Snapshot getBoard() {
+            return board;
+        }
+        
+        //快照时的分数
+        public int getScore() {
+            return score;
+        }
+        
+        //快照时已固定的方块数
+        public long getPiecesLocked() {
+            return piecesLocked;
+        }
+    }
+    
+    /**
+     * 构造函数
+     * 创建一个不读写任何文件的无界面引擎
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     */
+    public GameEngine(int width, int height) {
+        this(new GameBoard(width, height), new ScoreManager(0), new DifficultyManager());
+    }
+    
+    /**
+     * 构造函数
+     * 创建一个方块序列由种子决定的无界面引擎，用于回放和可重现的模拟
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param seed 方块序列的随机种子
+     */
+    public GameEngine(int width, int height, long seed) {
+        this(new GameBoard(width, height, seed), new ScoreManager(0), new DifficultyManager());
+    }
+    
+    /**
+     * 构造函数
+     * @param gameBoard 游戏区域
+     * @param scoreManager 分数管理器
+     * @param difficultyManager 难度管理器
+     */
+    public GameEngine(GameBoard gameBoard, ScoreManager scoreManager, DifficultyManager difficultyManager) {
+        this.gameBoard = gameBoard;
+        this.scoreManager = scoreManager;
+        this.difficultyManager = difficultyManager;
+    }
+    
+    /**
+     * 执行一次玩家操作
+     * @param action 操作
+     * @return 如果操作改变了方块状态返回true，否则返回false
+     */
+    public boolean apply(Action action) {
+        if (gameOver) {
+            return false;
+        }
+        boolean changed;
+        switch (action) {
+            case MOVE_LEFT:
+                changed = gameBoard.moveLeft();
+                break;
+            case MOVE_RIGHT:
+                changed = gameBoard.moveRight();
+                break;
+            case SOFT_DROP:
+                changed = gameBoard.moveDown();
+                break;
+            case ROTATE:
+                changed = gameBoard.rotate();
+                break;
+            case HARD_DROP:
+                changed = gameBoard.dropDown() > 0;
+                break;
+            default:
+                changed = false;
+                break;
+        }
+        // 没有改变状态的操作不影响回放结果，不必记录
+        if (changed && recorder != null) {
+            recorder.record(action.ordinal());
+        }
+        return changed;
+    }
+    
+    //手动提高难度，如果已经是最高难度则保持不变
+    public void increaseDifficulty() {
+        difficultyManager.increaseDifficulty();
+        if (recorder != null) {
+            recorder.record(ReplayRecorder.DIFFICULTY_UP);
+        }
+        if (journal != null && !gameOver) {
+            journal.level(this);
+        }
+    }
+    
+    //手动降低难度，如果已经是最低难度则保持不变
+    public void decreaseDifficulty() {
+        difficultyManager.decreaseDifficulty();
+        if (recorder != null) {
+            recorder.record(ReplayRecorder.DIFFICULTY_DOWN);
+        }
+        if (journal != null && !gameOver) {
+            journal.level(this);
+        }
+    }
+    
+    /**
+     * 依次执行旋转、平移和快速下落，把当前方块送到指定落点（在下一次step时固定）
+     * 用于自动演示等按落点而不是按按键操作的玩家
+     * @param rotations 顺时针旋转次数
+     * @param x 目标x坐标
+     */
+    public void dropAt(int rotations, int x) {
+        steerTo(rotations, x);
+        apply(Action.HARD_DROP);
+    }
+    
+    /**
+     * 依次执行旋转和平移，把当前方块移到指定落点的正上方，之后由重力带着它落下
+     * 用于需要看到方块下落过程的自动玩家（例如观战墙）
+     * @param rotations 顺时针旋转次数
+     * @param x 目标x坐标
+     */
+    public void steerTo(int rotations, int x) {
+        for (int i = 0; i < rotations; i++) {
+            apply(Action.ROTATE);
+        }
+        Block block = gameBoard.getCurrentBlock();
+        while (block.getX() > x && apply(Action.MOVE_LEFT)) {
+            // 继续左移
+        }
+        while (block.getX() < x && apply(Action.MOVE_RIGHT)) {
+            // 继续右移
+        }
+    }
+    
+    /**
+     * 执行一次重力下落
+     * 方块不能再下落时将其固定，检查游戏是否结束，然后消行、计分并更新难度
+     * @return 如果本次固定了方块返回true，否则返回false
+     */
+    public boolean step() {
+        if (gameOver) {
+            return false;
+        }
+        if (recorder != null) {
+            recorder.record(ReplayRecorder.GRAVITY);
+        }
+        if (gameBoard.moveDown()) {
+            return false;
+        }
+        Block block = gameBoard.getCurrentBlock();
+        int type = block.getType();
+        int rotation = block.getRotation();
+        int x = block.getX();
+        int y = block.getY();
+        gameBoard.placeBlock();
+        piecesLocked++;
+        int lines = 0;
+        if (gameBoard.isGameOver()) {
+            gameOver = true;
+        } else {
+            lines = gameBoard.clearLines();
+            if (lines > 0) {
+                linesCleared += lines;
+                scoreManager.addScore(lines);
+                difficultyManager.updateDifficulty(scoreManager.getScore());
+            }
+        }
+        if (journal != null) {
+            if (gameOver) {
+                journal.finish();
+            } else {
+                journal.lock(this, type, rotation, x, y, lines);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 拍摄引擎快照，颜色行写时复制，但占用掩码和列高整份复制，开销为O(高度 × 每行long数)（见 GameBoard.snapshot）
+     * @return 不可变的快照
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+    
+    /**
+     * 恢复到快照时的状态，需要重新扫描局面特征，开销为O(高度 × 每行long数)
+     * 恢复后录像无法再重现这局游戏，因此停止录像并把对局标记为分支
+     * @param snapshot 同尺寸引擎的快照
+     */
+    public void restore(Snapshot snapshot) {
+        resume(snapshot, true);
+    }
+    
+    /**
+     * 恢复到快照时的状态，用于从对局日志继续被中断的对局
+     * 录像无法延续，因此停止录像；对局日志写入新的检查点
+     * @param snapshot 同尺寸引擎的快照
+     * @param branched 被中断的对局是否已经是分支对局
+     */
+    void resume(Snapshot snapshot, boolean branched) {
+        gameBoard.restore(snapshot.board);
+        scoreManager.setScore(snapshot.score);
+        difficultyManager.setLevelIndex(snapshot.level);
+        piecesLocked = snapshot.piecesLocked;
+        linesCleared = snapshot.linesCleared;
+        gameOver = snapshot.gameOver;
+        recorder = null;
+        this.branched = branched;
+        checkpointJournal();
+    }
+    
+    //是否恢复过快照（撤销或练习分支），这样的对局不保存录像、不计入排行榜
+    public boolean isBranched() {
+        return branched;
+    }
+    
+    //游戏是否已经结束
+    public boolean isGameOver() {
+        return gameOver;
+    }
+    
+    //获取已固定的方块数
+    public long getPiecesLocked() {
+        return piecesLocked;
+    }
+    
+    //获取已消除的总行数
+    public long getLinesCleared() {
+        return linesCleared;
+    }
+    
+    public GameBoard getGameBoard() {
+        return gameBoard;
+    }
+    
+    public ScoreManager getScoreManager() {
+        return scoreManager;
+    }
+    
+    public DifficultyManager getDifficultyManager() {
+        return difficultyManager;
+    }
+    
+    /**
+     * 设置录像记录器，之后执行的每个事件都会被记录
+     * 必须在第一个事件之前设置，且记录器的种子必须与游戏区域的种子相同
+     * @param recorder 录像记录器，null表示不录像
+     */
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    public ReplayRecorder getRecorder() {
+        return recorder;
+    }
+    
+    /**
+     * 设置对局日志，设置后立即写入一个检查点，之后每个固定的方块和难度调整都记入日志
+     * 只在拥有引擎的线程上调用
+     * @param journal 对局日志，null表示不再记录
+     */
+    public void setJournal(SessionJournal journal) {
+        this.journal = journal;
+        checkpointJournal();
+    }
+    
+    //把当前状态作为检查点写入对局日志，已经结束的对局删除日志
+    private void checkpointJournal() {
+        if (journal == null) {
+            return;
+        }
+        if (gameOver) {
+            journal.finish();
+        } else {
+            journal.checkpoint(this);
+        }
+    }
+}
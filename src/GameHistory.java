@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 对局历史
+ * 按顺序保存每个方块出现时的引擎快照，用于多级撤销和练习模式（从任意较早的局面分支重新玩）。
+ * 快照与游戏区域共享未修改的颜色行，每个快照另外复制行引用、占用掩码和列高，内存与局面高度成正比；超过容量时丢弃最早的快照。
+ *
+ * 游戏循环线程记录和恢复快照，EDT 列出可选的局面，所有方法都是同步的。
+ */
+public class GameHistory {
+    private final GameEngine.Snapshot[] ring;
+    private int first;    // 最早的快照在环形数组中的位置
+    private int size;
+
+    /**
+     * 构造函数
+     * @param capacity 最多保存的快照个数
+     */
+    public GameHistory(int capacity) {
+        this.ring = new GameEngine.Snapshot[Math.max(2, capacity)];
+    }
+
+    //清空历史，开始新的一局时调用
+    public synchronized void clear() {
+        Arrays.fill(ring, null);
+        first = 0;
+        size = 0;
+    }
+
+    /**
+     * 在末尾追加一个快照，已满时丢弃最早的快照
+     * @param snapshot 新方块出现时的引擎快照
+     */
+    public synchronized void record(GameEngine.Snapshot snapshot) {
+        if (size == ring.length) {
+            ring[first] = snapshot;
+            first = (first + 1) % ring.length;
+        } else {
+            ring[(first + size) % ring.length] = snapshot;
+            size++;
+        }
+    }
+
+    //已保存的快照个数
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 获取第index个快照
+     * @param index 0为最早的快照，size() - 1为当前方块出现时的快照
+     */
+    public synchronized GameEngine.Snapshot get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("历史中没有第" + index + "个快照，共" + size + "个");
+        }
+        return ring[(first + index) % ring.length];
+    }
+
+    //按从早到晚的顺序复制所有快照，供界面列出
+    public synchronized List<GameEngine.Snapshot> list() {
+        List<GameEngine.Snapshot> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(ring[(first + i) % ring.length]);
+        }
+        return list;
+    }
+
+    /**
+     * 撤销一个方块：丢弃当前方块的快照，返回上一个方块出现时的快照
+     * @return 要恢复的快照，历史中只剩当前方块时返回null
+     */
+    public synchronized GameEngine.Snapshot undo() {
+        if (size < 2) {
+            return null;
+        }
+        size--;
+        ring[(first + size) % ring.length] = null;
+        return ring[(first + size - 1) % ring.length];
+    }
+
+    /**
+     * 从第index个快照分支：丢弃它之后的所有快照，返回该快照
+     * @param index 0为最早的快照
+     * @return 要恢复的快照
+     */
+    public synchronized GameEngine.Snapshot branch(int index) {
+        GameEngine.Snapshot snapshot = get(index);
+        for (int i = index + 1; i < size; i++) {
+            ring[(first + i) % ring.length] = null;
+        }
+        size = index + 1;
+        return snapshot;
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 游戏循环类
+ * 在独立线程上以固定时间步长推进游戏逻辑，取代由EDT驱动的javax.swing.Timer。
+ *
+ * 逻辑节拍固定为 TICK_NANOS，用 System.nanoTime 计算下一节拍的预定时间；线程被延误时，
+ * 按顺序补齐错过的节拍，因此同样的输入总是得到同样的结果，与绘制负载无关。
+ * 方块每隔“当前难度速度 / 节拍长度”个节拍下落一格。
+ *
+ * 引擎只在循环线程上访问：按键通过 InputQueue 传入，由 InputHandler 在每个节拍转换为操作（含DAS/ARR自动重复）；
+ * 其他界面操作通过 submit 提交命令，循环在下一节拍开始时执行；
+ * 每次状态变化后生成不可变的 GameSnapshot 交给 Listener，由界面切换到EDT绘制。
+ * 每个新方块出现时把引擎快照记入 GameHistory，undo 和 branch 在循环线程上恢复其中的快照。
+ * 设置了 SessionJournal 时，它始终挂在当前引擎上，重新开始游戏时转移到新引擎。
+ */
+public class GameLoop implements Runnable {
+    public static final long TICK_NANOS = 10_000_000L;   // 逻辑节拍长度：10毫秒
+    private static final int MAX_CATCH_UP_TICKS = 100;   // 一次最多补齐的节拍数，落后更多时放弃追赶
+    private static final int HISTORY_SIZE = 200;         // 最多可以撤销或分支回去的方块数
+
+    /**
+     * 游戏循环的回调，均在循环线程上调用
+     */
+    public interface Listener {
+        //状态变化后生成了新快照
+        void onFrame(GameSnapshot snapshot);
+
+        //引擎进入游戏结束状态，每个引擎只回调一次
+        void onGameOver(GameEngine engine);
+    }
+
+    /**
+     * 节拍抖动统计（不可变）
+     * 延迟指节拍实际开始时间比预定时间晚了多少
+     */
+    public static final class TickStats {
+        public final long ticks;             // 已执行的节拍数
+        public final double meanLateMicros;  // 平均延迟（微秒）
+        public final double stdDevMicros;    // 延迟标准差（微秒）
+        public final double maxLateMicros;   // 最大延迟（微秒）
+        public final long caughtUpTicks;     // 因延误而补齐的节拍数
+        public final long droppedTicks;      // 落后太多而放弃的节拍数
+
+        TickStats(long ticks, double meanLateMicros, double stdDevMicros, double maxLateMicros,
+                  long caughtUpTicks, long droppedTicks) {
+            this.ticks = ticks;
+            this.meanLateMicros = meanLateMicros;
+            this.stdDevMicros = stdDevMicros;
+            this.maxLateMicros = maxLateMicros;
+            this.caughtUpTicks = caughtUpTicks;
+            this.droppedTicks = droppedTicks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("节拍 %d  平均延迟 %.0fµs  标准差 %.0fµs  最大 %.0fµs  补齐 %d  放弃 %d",
+                ticks, meanLateMicros, stdDevMicros, maxLateMicros, caughtUpTicks, droppedTicks);
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final Listener listener;
+    private final InputQueue inputQueue;
+    private final GameHistory history = new GameHistory(HISTORY_SIZE);
+    private volatile boolean running = true;
+    private volatile boolean paused;
+    private volatile AutoPlayer autoPlayer;   // 不为null时由自动演示控制方块
+    private Thread thread;
+
+    // 以下字段只在循环线程上访问
+    private GameEngine engine;
+    private SessionJournal journal;
+    private final InputHandler inputHandler;
+    private GameSnapshot snapshot;
+    private boolean dirty = true;          // 自上次发布快照以来状态是否可能变化
+    private boolean gameOverReported;
+    private int gravityTicks;              // 距上次重力下落经过的节拍数
+    private long plannedPiece = -1;        // 自动演示已经安排过落点的方块序号
+
+    // 节拍抖动统计，只由循环线程写入；volatile 使界面线程可以随时读取，节拍上不分配对象
+    private volatile long ticks;
+    private volatile double lateMean;      // 延迟均值（Welford算法）
+    private volatile double lateM2;        // 延迟平方差累计（Welford算法）
+    private volatile long lateMax;
+    private volatile long caughtUpTicks;
+    private volatile long droppedTicks;
+
+    /**
+     * 构造函数
+     * @param engine 初始游戏引擎
+     * @param listener 回调
+     * @param inputQueue 按键事件队列
+     * @param inputHandler 按键处理器，启动后只在循环线程上使用
+     */
+    public GameLoop(GameEngine engine, Listener listener, InputQueue inputQueue, InputHandler inputHandler) {
+        this.engine = engine;
+        this.listener = listener;
+        this.inputQueue = inputQueue;
+        this.inputHandler = inputHandler;
+        history.record(engine.snapshot());    // 循环线程尚未启动
+    }
+
+    /**
+     * 启动循环线程
+     */
+    public void start() {
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止循环线程
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 提交一个在循环线程上执行的命令，在下一节拍开始时按提交顺序执行
+     * @param command 命令
+     */
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * 替换游戏引擎（重新开始游戏时使用）
+     * @param newEngine 新引擎
+     */
+    public void setEngine(GameEngine newEngine) {
+        submit(() -> {
+            if (journal != null) {
+                engine.setJournal(null);
+                newEngine.setJournal(journal);
+            }
+            engine = newEngine;
+            inputHandler.reset(inputQueue);
+            gravityTicks = 0;
+            plannedPiece = -1;
+            gameOverReported = false;
+            history.clear();
+            history.record(engine.snapshot());
+        });
+    }
+    
+    /**
+     * 设置对局日志，当前引擎和之后替换的引擎都写入这个日志
+     * @param journal 对局日志
+     */
+    public void setJournal(SessionJournal journal) {
+        submit(() -> {
+            this.journal = journal;
+            engine.setJournal(journal);
+        });
+    }
+    
+    /**
+     * 撤销最近固定的一个方块，回到它出现时的局面；没有可撤销的方块时不做任何事
+     * 游戏结束后也可以撤销：结束时没有为出现失败的方块记录快照，最新的快照就是顶出的那个方块出现时的局面
+     */
+    public void undo() {
+        submit(() -> {
+            GameEngine.Snapshot previous = engine.isGameOver() ? history.get(history.size() - 1) : history.undo();
+            if (previous != null) {
+                restore(previous);
+            }
+        });
+    }
+    
+    /**
+     * 回到历史中第index个方块出现时的局面，丢弃之后的历史，从那里继续玩
+     * @param index 历史中的序号，0为最早的快照
+     */
+    public void branch(int index) {
+        submit(() -> restore(history.branch(index)));
+    }
+    
+    //获取对局历史，界面可以从中列出可以分支的局面
+    public GameHistory getHistory() {
+        return history;
+    }
+    
+    //在循环线程上恢复快照，并清除与旧局面有关的状态
+    private void restore(GameEngine.Snapshot target) {
+        engine.restore(target);
+        inputHandler.reset(inputQueue);
+        gravityTicks = 0;
+        plannedPiece = -1;
+        gameOverReported = false;
+    }
+
+    //暂停或继续，暂停期间不执行重力下落和自动演示，已提交的命令仍会执行
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    //设置自动演示玩家，null表示由玩家手动操作
+    public void setAutoPlayer(AutoPlayer autoPlayer) {
+        submit(() -> plannedPiece = -1);
+        this.autoPlayer = autoPlayer;
+    }
+
+    /**
+     * 按当前的计数生成节拍抖动统计
+     * 每次调用都新建对象，由界面定时器调用；各项分别读取，相互之间可能差一两个节拍
+     */
+    public TickStats getTickStats() {
+        long n = ticks;
+        return new TickStats(n, lateMean / 1e3, n == 0 ? 0 : Math.sqrt(lateM2 / n) / 1e3, lateMax / 1e3,
+            caughtUpTicks, droppedTicks);
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now < nextTick) {
+                LockSupport.parkNanos(nextTick - now);
+                continue;
+            }
+            int executed = 0;
+            while (now >= nextTick && executed < MAX_CATCH_UP_TICKS) {
+                recordLateness(now - nextTick);
+                if (executed > 0) {
+                    caughtUpTicks++;
+                }
+                tick(nextTick);
+                nextTick += TICK_NANOS;
+                executed++;
+            }
+            if (now >= nextTick) {
+                // 落后超过MAX_CATCH_UP_TICKS个节拍（例如系统休眠），不再追赶，从当前时间重新计时
+                droppedTicks += (now - nextTick) / TICK_NANOS + 1;
+                nextTick = now + TICK_NANOS;
+            }
+            if (dirty) {
+                dirty = false;
+                snapshot = GameSnapshot.capture(engine, snapshot, inputHandler.takePendingInput());
+                listener.onFrame(snapshot);
+            }
+            if (engine.isGameOver() && !gameOverReported) {
+                gameOverReported = true;
+                listener.onGameOver(engine);
+            }
+        }
+    }
+
+    /**
+     * 执行一个逻辑节拍：先执行界面提交的命令和按键输入，再执行自动演示和重力下落
+     * @param tickTime 本节拍的预定时间，只处理此时间之前的按键事件
+     */
+    private void tick(long tickTime) {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            dirty = true;
+        }
+        if (paused || engine.isGameOver()) {
+            inputHandler.reset(inputQueue);
+            return;
+        }
+        if (inputHandler.update(engine, inputQueue, tickTime)) {
+            dirty = true;
+        }
+        AutoPlayer player = autoPlayer;
+        if (player != null && plannedPiece != engine.getPiecesLocked()) {
+            plannedPiece = engine.getPiecesLocked();
+            AutoPlayer.Move move = player.decide(engine.getGameBoard());
+            if (move != null) {
+                engine.dropAt(move.rotations, move.x);
+                dirty = true;
+            }
+        }
+        long interval = Math.max(1, engine.getDifficultyManager().getCurrentSpeed() * 1_000_000L / TICK_NANOS);
+        if (++gravityTicks >= interval) {
+            gravityTicks = 0;
+            long lines = engine.getLinesCleared();
+            if (engine.step()) {
+                Metrics.PIECES_LOCKED.increment();
+                Metrics.LINES_CLEARED.add(engine.getLinesCleared() - lines);
+                if (!engine.isGameOver()) {
+                    history.record(engine.snapshot());
+                }
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * 记录一个节拍的延迟，只更新计数，统计对象由 getTickStats 在读取时生成
+     * @param lateNanos 节拍实际开始时间与预定时间之差
+     */
+    private void recordLateness(long lateNanos) {
+        Metrics.TICK_JITTER.record(lateNanos);
+        ticks++;
+        double delta = lateNanos - lateMean;
+        lateMean += delta / ticks;
+        lateM2 += delta * (lateNanos - lateMean);
+        lateMax = Math.max(lateMax, lateNanos);
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多会话游戏服务器
+ * 在一个JVM中同时运行大量互相独立的对局，每个TCP连接对应一个会话（一个 GameEngine），
+ * 用于机器人联赛和回归测试场。
+ *
+ * 每个会话在自己的虚拟线程上阻塞读写连接，数千个会话只占用很少的平台线程。
+ * 重力下落不再每局一个定时器，而是由所有会话共享的 ScheduledExecutorService 按各自的难度速度调度；
+ * 会话线程和调度线程通过每个会话的锁互斥访问引擎。
+ *
+ * 协议为按行的文本（UTF-8），每条命令返回一行：
+ * <pre>
+ * L / R / D / U / H      左移 / 右移 / 下移一格 / 旋转 / 快速下落，返回 "OK 1"（状态改变）或 "OK 0"
+ * P 旋转次数 x          把方块送到指定落点（AutoPlayer.Move 的含义），返回 "OK 1"
+ * S                      返回 "S 分数 难度等级 方块数 消行数 是否结束 方块类型 旋转 x y 下一个类型"
+ * B                      返回 "B " 加上逐行的格子颜色（每格一位数字，0为空，行优先）
+ * N [种子] [宽度 高度]   以给定（或随机）种子重新开始，返回 "OK 1"；可同时指定本会话的游戏区域大小
+ *                        （宽度4-1024，高度4-8192），省略时沿用当前大小，新会话默认为10x20
+ * T                      返回服务器统计 "T 会话数 重力下落总数 操作总数"
+ * Q                      关闭连接
+ * </pre>
+ * 游戏已经结束时，操作命令返回 "OVER 分数"；无法识别的命令返回 "ERR 原因"。
+ *
+ * 用法：java GameServer [端口] [重力加速倍数]
+ */
+public class GameServer implements Closeable {
+    public static final int DEFAULT_PORT = 7777;
+    private static final int DEFAULT_WIDTH = 10;     // 新会话的游戏区域宽度
+    private static final int DEFAULT_HEIGHT = 20;    // 新会话的游戏区域高度
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;               // 每个会话一个虚拟线程
+    private final ScheduledThreadPoolExecutor gravity;    // 所有会话共享的重力调度器
+    private final int gravityScale;                       // 重力加速倍数，1为正常速度
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final LongAdder ticks = new LongAdder();      // 重力下落总次数
+    private final LongAdder actions = new LongAdder();    // 已处理的命令总数
+    private volatile boolean running = true;
+
+    /**
+     * 构造函数：绑定端口，但不开始接受连接
+     * @param port 监听端口，0表示任意空闲端口
+     * @param gravityScale 重力加速倍数，用于压力测试
+     */
+    public GameServer(int port, int gravityScale) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.sessions = Executors.newVirtualThreadPerTaskExecutor();
+        this.gravityScale = Math.max(1, gravityScale);
+        this.gravity = new ScheduledThreadPoolExecutor(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            daemonFactory("gravity"));
+        this.gravity.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    //获取实际监听的端口
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    //当前连接的会话数
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    //重力下落总次数
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    /**
+     * 在当前线程上接受连接，直到 close 被调用
+     */
+    public void serve() throws IOException {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!running) {
+                    return;
+                }
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            sessions.execute(new Session(socket));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        sessions.shutdownNow();
+        gravity.shutdownNow();
+    }
+
+    /**
+     * 一个连接对应的会话
+     * 引擎由会话线程（处理命令）和重力调度线程共同访问，都必须持有 lock；
+     * 用 ReentrantLock 而不是 synchronized，虚拟线程等待时不会占住承载它的平台线程。
+     */
+    private final class Session implements Runnable {
+        private final Socket socket;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Runnable tickTask = this::tick;
+        private final StringBuilder reply = new StringBuilder(64);
+        private GameEngine engine;
+        private ScheduledFuture<?> gravityTask;
+        private boolean closed;
+
+        Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            activeSessions.incrementAndGet();
+            try (Socket s = socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                 Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+                restart(new Random().nextLong(), DEFAULT_WIDTH, DEFAULT_HEIGHT);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals("Q")) {
+                        break;
+                    }
+                    reply.setLength(0);
+                    lock.lock();
+                    try {
+                        handle(line.trim());
+                    } finally {
+                        lock.unlock();
+                    }
+                    actions.increment();
+                    out.append(reply).append('\n');
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // 客户端断开，直接结束会话
+            } finally {
+                lock.lock();
+                try {
+                    closed = true;
+                    if (gravityTask != null) {
+                        gravityTask.cancel(false);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                activeSessions.decrementAndGet();
+            }
+        }
+
+        //处理一条命令，结果写入reply，调用时持有lock
+        private void handle(String command) {
+            if (command.isEmpty()) {
+                reply.append("ERR 空命令");
+                return;
+            }
+            char op = command.charAt(0);
+            switch (op) {
+                case 'S':
+                    appendState();
+                    return;
+                case 'B':
+                    appendBoard();
+                    return;
+                case 'T':
+                    reply.append("T ").append(activeSessions.get()).append(' ').append(ticks.sum())
+                        .append(' ').append(actions.sum());
+                    return;
+                case 'N':
+                    String[] parts = command.substring(1).trim().split("\\s+");
+                    if (parts.length == 2 || parts.length > 3) {
+                        reply.append("ERR 用法: N [种子] [宽度 高度]");
+                        return;
+                    }
+                    GameBoard current = engine.getGameBoard();
+                    int width = current.getWidth();
+                    int height = current.getHeight();
+                    long seed;
+                    try {
+                        seed = parts[0].isEmpty() ? new Random().nextLong() : Long.parseLong(parts[0]);
+                        if (parts.length == 3) {
+                            width = Integer.parseInt(parts[1]);
+                            height = Integer.parseInt(parts[2]);
+                        }
+                    } catch (NumberFormatException e) {
+                        reply.append("ERR 用法: N [种子] [宽度 高度]");
+                        return;
+                    }
+                    if (width < 4 || width > GameBoard.MAX_WIDTH || height < 4 || height > GameBoard.MAX_HEIGHT) {
+                        reply.append("ERR 游戏区域大小超出范围: ").append(width).append('x').append(height);
+                        return;
+                    }
+                    restart(seed, width, height);
+                    reply.append("OK 1");
+                    return;
+                default:
+                    break;
+            }
+            if (engine.isGameOver()) {
+                reply.append("OVER ").append(engine.getScoreManager().getScore());
+                return;
+            }
+            boolean changed;
+            switch (op) {
+                case 'L':
+                    changed = engine.apply(GameEngine.Action.MOVE_LEFT);
+                    break;
+                case 'R':
+                    changed = engine.apply(GameEngine.Action.MOVE_RIGHT);
+                    break;
+                case 'D':
+                    changed = engine.apply(GameEngine.Action.SOFT_DROP);
+                    break;
+                case 'U':
+                    changed = engine.apply(GameEngine.Action.ROTATE);
+                    break;
+                case 'H':
+                    changed = engine.apply(GameEngine.Action.HARD_DROP);
+                    break;
+                case 'P':
+                    String[] parts = command.substring(1).trim().split("\\s+");
+                    try {
+                        // 旋转次数由客户端给出，先对4取模，避免持有会话锁时空转
+                        int rotations = Math.floorMod(Integer.parseInt(parts[0]), Block.ROTATION_COUNT);
+                        engine.dropAt(rotations, Integer.parseInt(parts[1]));
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        reply.append("ERR 用法: P 旋转次数 x");
+                        return;
+                    }
+                    changed = true;
+                    break;
+                default:
+                    reply.append("ERR 未知命令: ").append(op);
+                    return;
+            }
+            reply.append(changed ? "OK 1" : "OK 0");
+        }
+
+        private void appendState() {
+            Block block = engine.getGameBoard().getCurrentBlock();
+            reply.append("S ").append(engine.getScoreManager().getScore())
+                .append(' ').append(engine.getDifficultyManager().getLevelIndex())
+                .append(' ').append(engine.getPiecesLocked())
+                .append(' ').append(engine.getLinesCleared())
+                .append(' ').append(engine.isGameOver() ? 1 : 0)
+                .append(' ').append(block.getType())
+                .append(' ').append(block.getRotation())
+                .append(' ').append(block.getX())
+                .append(' ').append(block.getY())
+                .append(' ').append(engine.getGameBoard().getNextType());
+        }
+
+        private void appendBoard() {
+            GameBoard board = engine.getGameBoard();
+            reply.append("B ");
+            for (int y = 0; y < board.getHeight(); y++) {
+                for (int x = 0; x < board.getWidth(); x++) {
+                    reply.append((char) ('0' + board.getCell(x, y)));
+                }
+            }
+        }
+
+        //以新种子和给定大小开始新的一局，调用时持有lock（或尚未被其他线程访问）
+        private void restart(long seed, int width, int height) {
+            if (gravityTask != null) {
+                gravityTask.cancel(false);
+            }
+            engine = new GameEngine(width, height, seed);
+            scheduleGravity();
+        }
+
+        private void scheduleGravity() {
+            long delay = Math.max(1, engine.getDifficultyManager().getCurrentSpeed() / gravityScale);
+            gravityTask = gravity.schedule(tickTask, delay, TimeUnit.MILLISECONDS);
+        }
+
+        //重力下落一格，然后按当前难度安排下一次
+        private void tick() {
+            lock.lock();
+            try {
+                if (closed || engine.isGameOver()) {
+                    return;
+                }
+                engine.step();
+                ticks.increment();
+                if (!engine.isGameOver()) {
+                    scheduleGravity();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int gravityScale = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        GameServer server = new GameServer(port, gravityScale);
+        System.out.printf("游戏服务器监听端口 %d，重力加速 %d 倍%n", server.getPort(), server.gravityScale);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonFactory("server-stats"));
+        long[] last = {System.nanoTime(), 0};
+        reporter.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long total = server.getTicks();
+            System.out.printf("会话 %d  重力下落 %.0f 次/秒%n", server.getActiveSessions(),
+                (total - last[1]) / ((now - last[0]) / 1e9));
+            last[0] = now;
+            last[1] = total;
+        }, 5, 5, TimeUnit.SECONDS);
+        server.serve();
+    }
+}
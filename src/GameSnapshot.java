@@ -0,0 +1,159 @@
+/**
+ * 游戏画面快照类
+ * 游戏循环线程在每次状态变化后生成一个不可变快照交给Swing绘制，
+ * 绘制线程只读快照，不直接访问游戏循环线程正在修改的GameBoard。
+ *
+ * 已固定方块的颜色数组只在局面版本号变化时才重新复制，版本号不变的相邻快照共享同一个数组，
+ * 因此绘制端可以用数组是否为同一个对象来判断离屏缓存是否失效。
+ */
+public final class GameSnapshot {
+    public static final int MAX_PREVIEW = 10;   // 快照中保存的预览方块数，每个占3位，共30位
+    
+    private final GameBoard source;      // 仅用于判断快照是否来自同一个游戏区域，不读取其内容
+    private final int width;
+    private final int height;
+    private final int[] cells;           // 已固定方块的颜色，按行优先排列，不得修改
+    private final long boardVersion;
+    private final int pieceColor;
+    private final int[] pieceCells;      // 当前方块格子偏移量（Block预计算的共享数组）
+    private final int pieceX;
+    private final int pieceY;
+    private final int dropDistance;
+    private final int preview;           // 接下来的方块类型，第i个在第3i位起的3位中
+    private final int score;
+    private final int highScore;
+    private final String level;
+    private final boolean gameOver;
+    private final long inputNanos;       // 引起本快照变化的最早输入时间，0表示没有
+
+    private GameSnapshot(GameEngine engine, GameSnapshot previous, long inputNanos) {
+        GameBoard board = engine.getGameBoard();
+        Block block = board.getCurrentBlock();
+        this.source = board;
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.boardVersion = board.getVersion();
+        if (previous != null && previous.source == board && previous.boardVersion == boardVersion) {
+            this.cells = previous.cells;
+        } else {
+            this.cells = new int[width * height];
+            board.copyColors(cells);
+        }
+        this.pieceColor = block.getColor();
+        this.pieceCells = block.getCells();
+        this.pieceX = block.getX();
+        this.pieceY = block.getY();
+        this.dropDistance = board.getDropDistance();
+        int packed = 0;
+        for (int i = Math.min(MAX_PREVIEW, board.getPreviewLimit()) - 1; i >= 0; i--) {
+            packed = packed << 3 | board.getPreviewType(i);
+        }
+        this.preview = packed;
+        this.score = engine.getScoreManager().getScore();
+        this.highScore = engine.getScoreManager().getHighScore();
+        this.level = engine.getDifficultyManager().getCurrentLevel();
+        this.gameOver = engine.isGameOver();
+        this.inputNanos = inputNanos;
+    }
+
+    /**
+     * 生成快照，必须在拥有引擎的线程上调用
+     * @param engine 游戏引擎
+     * @param previous 上一个快照，局面未变化时复用其颜色数组，可以为null
+     * @return 新快照
+     */
+    public static GameSnapshot capture(GameEngine engine, GameSnapshot previous) {
+        return new GameSnapshot(engine, previous, 0);
+    }
+    
+    /**
+     * 生成快照并附带输入时间，用于统计输入到画面变化的延迟
+     * @param engine 游戏引擎
+     * @param previous 上一个快照，可以为null
+     * @param inputNanos 引起本次变化的最早输入时间，0表示没有
+     * @return 新快照
+     */
+    public static GameSnapshot capture(GameEngine engine, GameSnapshot previous, long inputNanos) {
+        return new GameSnapshot(engine, previous, inputNanos);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 获取指定格子的颜色编号
+     * @param x 列
+     * @param y 行
+     * @return 颜色编号（1-7），0表示空白
+     */
+    public int getCell(int x, int y) {
+        return cells[y * width + x];
+    }
+
+    //已固定方块是否与另一个快照完全相同（共享同一个颜色数组）
+    public boolean sameCells(GameSnapshot other) {
+        return other != null && other.cells == cells;
+    }
+
+    public int getPieceColor() {
+        return pieceColor;
+    }
+
+    //获取当前方块格子偏移量 {dx0, dy0, dx1, dy1, ...}，不得修改
+    public int[] getPieceCells() {
+        return pieceCells;
+    }
+
+    public int getPieceX() {
+        return pieceX;
+    }
+
+    public int getPieceY() {
+        return pieceY;
+    }
+
+    //获取当前方块还能下落的行数
+    public int getDropDistance() {
+        return dropDistance;
+    }
+
+    /**
+     * 获取之后第ahead个方块的类型
+     * @param ahead 0表示下一个方块，必须小于 MAX_PREVIEW
+     * @return 方块类型（0-6）
+     */
+    public int getPreviewType(int ahead) {
+        return preview >>> (3 * ahead) & 7;
+    }
+
+    //接下来的方块是否与另一个快照相同
+    public boolean samePreview(GameSnapshot other) {
+        return other != null && other.preview == preview;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getHighScore() {
+        return highScore;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+    
+    //获取引起本快照变化的最早输入时间（System.nanoTime），0表示没有
+    public long getInputNanos() {
+        return inputNanos;
+    }
+}
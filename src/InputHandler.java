@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * 输入处理类
+ * 在游戏循环线程上每个节拍消费InputQueue中的事件，把按键状态转换为游戏操作，
+ * 并由引擎自己计算按住方向键时的自动重复：
+ * 按下时立即移动一格，持续按住 DAS（delayed auto shift）之后每隔 ARR（auto repeat rate）再移动一格，
+ * ARR为0时直接移到墙边。加速下落没有DAS，按住时按固定间隔下落。
+ * 因此重复速度与操作系统的按键重复设置无关。
+ */
+public class InputHandler {
+    private static final int ACTION_COUNT = GameEngine.Action.values().length;
+
+    private final long dasNanos;       // 自动重复开始前的延迟
+    private final long arrNanos;       // 左右移动自动重复的间隔，0表示立即移到墙边
+    private final long softDropNanos;  // 按住加速下落时的下落间隔
+    private final boolean[] held = new boolean[ACTION_COUNT];
+    private final long[] nextRepeat = new long[ACTION_COUNT];
+    private GameEngine.Action horizontal;   // 当前生效的水平方向（最后按下且仍按住的方向键）
+    private long pendingInputNanos;         // 引起状态变化、尚未发布到快照的最早输入时间，0表示没有
+    private boolean changed;                // 本次update是否改变了方块状态
+
+    /**
+     * 构造函数
+     * @param dasMillis DAS（毫秒）
+     * @param arrMillis ARR（毫秒），0表示立即移到墙边
+     * @param softDropMillis 加速下落间隔（毫秒）
+     */
+    public InputHandler(int dasMillis, int arrMillis, int softDropMillis) {
+        this.dasNanos = dasMillis * 1_000_000L;
+        this.arrNanos = arrMillis * 1_000_000L;
+        this.softDropNanos = Math.max(1, softDropMillis) * 1_000_000L;
+    }
+
+    /**
+     * 处理截至tickTime的所有输入事件，再执行按住按键的自动重复
+     * @param engine 游戏引擎
+     * @param queue 输入队列
+     * @param tickTime 本节拍的预定时间
+     * @return 如果有操作改变了方块状态返回true
+     */
+    public boolean update(GameEngine engine, InputQueue queue, long tickTime) {
+        changed = false;
+        while (!queue.isEmpty() && queue.peekTime() <= tickTime) {
+            GameEngine.Action action = queue.peekAction();
+            long time = queue.peekTime();
+            if (queue.peekDown()) {
+                press(engine, action, time);
+            } else {
+                release(action, time);
+            }
+            queue.advance();
+        }
+        if (horizontal != null) {
+            repeat(engine, horizontal, arrNanos, tickTime);
+        }
+        if (held[GameEngine.Action.SOFT_DROP.ordinal()]) {
+            repeat(engine, GameEngine.Action.SOFT_DROP, softDropNanos, tickTime);
+        }
+        return changed;
+    }
+
+    /**
+     * 丢弃队列中的事件并松开所有按键（暂停或重新开始时使用）
+     * @param queue 输入队列
+     */
+    public void reset(InputQueue queue) {
+        while (!queue.isEmpty()) {
+            queue.advance();
+        }
+        Arrays.fill(held, false);
+        horizontal = null;
+    }
+
+    /**
+     * 取出并清除待发布的输入时间
+     * @return 引起状态变化的最早输入时间，0表示没有
+     */
+    public long takePendingInput() {
+        long nanos = pendingInputNanos;
+        pendingInputNanos = 0;
+        return nanos;
+    }
+
+    private void press(GameEngine engine, GameEngine.Action action, long time) {
+        int index = action.ordinal();
+        if (held[index]) {
+            return;    // 忽略操作系统产生的重复按下事件
+        }
+        held[index] = true;
+        if (engine.apply(action)) {
+            changed = true;
+            if (pendingInputNanos == 0) {
+                pendingInputNanos = time;
+            }
+        }
+        switch (action) {
+            case MOVE_LEFT:
+            case MOVE_RIGHT:
+                horizontal = action;
+                nextRepeat[index] = time + dasNanos;
+                break;
+            case SOFT_DROP:
+                nextRepeat[index] = time + softDropNanos;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void release(GameEngine.Action action, long time) {
+        held[action.ordinal()] = false;
+        if (horizontal == action) {
+            // 另一个方向键仍按住时恢复该方向，并重新计算DAS
+            GameEngine.Action other = action == GameEngine.Action.MOVE_LEFT
+                ? GameEngine.Action.MOVE_RIGHT : GameEngine.Action.MOVE_LEFT;
+            if (held[other.ordinal()]) {
+                horizontal = other;
+                nextRepeat[other.ordinal()] = time + dasNanos;
+            } else {
+                horizontal = null;
+            }
+        }
+    }
+
+    private void repeat(GameEngine engine, GameEngine.Action action, long interval, long tickTime) {
+        int index = action.ordinal();
+        if (nextRepeat[index] > tickTime) {
+            return;
+        }
+        if (interval == 0) {
+            while (engine.apply(action)) {
+                changed = true;    // 移到墙边
+            }
+            return;
+        }
+        while (nextRepeat[index] <= tickTime) {
+            changed |= engine.apply(action);
+            nextRepeat[index] += interval;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 输入事件队列
+ * EDT在按键按下/松开时写入带 System.nanoTime 时间戳的事件，游戏循环线程在每个节拍读取。
+ * 单生产者单消费者的环形缓冲区，写入和读取都不分配对象。
+ *
+ * 队列同时统计“输入到画面变化”的延迟：游戏循环把引起状态变化的最早输入时间放进快照，
+ * 面板第一次绘制该快照时调用 recordLatency，它只累加计数，文字描述由界面定时器调用 getLatencySummary 时才生成。
+ */
+public class InputQueue {
+    private static final int CAPACITY = 256;            // 必须是2的幂
+    private static final int MASK = CAPACITY - 1;
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+    private final long[] times = new long[CAPACITY];    // 事件时间戳
+    private final int[] codes = new int[CAPACITY];      // (操作序号 << 1) | 是否按下
+    private final AtomicLong head = new AtomicLong();   // 下一个写入位置，只由生产者修改
+    private final AtomicLong tail = new AtomicLong();   // 下一个读取位置，只由消费者修改
+
+    // 延迟统计，只在EDT上访问
+    private long latencyCount;
+    private long latencyTotal;
+    private long latencyMax;
+
+    /**
+     * 写入一个事件（生产者线程调用）
+     * @param action 按键对应的操作
+     * @param down true表示按下，false表示松开
+     * @param nanos 事件时间戳（System.nanoTime）
+     * @return 队列已满时返回false，事件被丢弃
+     */
+    public boolean offer(GameEngine.Action action, boolean down, long nanos) {
+        long h = head.get();
+        if (h - tail.get() >= CAPACITY) {
+            return false;
+        }
+        int index = (int) (h & MASK);
+        times[index] = nanos;
+        codes[index] = (action.ordinal() << 1) | (down ? 1 : 0);
+        head.lazySet(h + 1);    // 先写数据再发布位置
+        return true;
+    }
+
+    //队列是否为空（消费者线程调用）
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    //队首事件的时间戳，调用前必须确认队列非空
+    public long peekTime() {
+        return times[(int) (tail.get() & MASK)];
+    }
+
+    //队首事件的操作
+    public GameEngine.Action peekAction() {
+        return ACTIONS[codes[(int) (tail.get() & MASK)] >>> 1];
+    }
+
+    //队首事件是否为按下
+    public boolean peekDown() {
+        return (codes[(int) (tail.get() & MASK)] & 1) != 0;
+    }
+
+    //移除队首事件
+    public void advance() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * 记录一次从输入到画面变化的延迟（EDT调用，在绘制路径上，不分配对象）
+     * @param nanos 延迟纳秒数
+     */
+    public void recordLatency(long nanos) {
+        Metrics.INPUT_LATENCY.record(nanos);
+        latencyCount++;
+        latencyTotal += nanos;
+        latencyMax = Math.max(latencyMax, nanos);
+    }
+
+    /**
+     * 生成“平均/最大”输入延迟的文字描述（EDT调用）
+     * 每次调用都格式化一次，只应由定时器调用，不要在绘制路径上调用
+     */
+    public String getLatencySummary() {
+        if (latencyCount == 0) {
+            return "-";
+        }
+        return String.format("%.1f/%.1fms", latencyTotal / 1e6 / latencyCount, latencyMax / 1e6);
+    }
+}
@@ -1,43 +1,98 @@
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.JTableHeader;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutionException;
 
 /**
- * 排行榜弹窗类，支持按难度筛选并显示所有超过1000分的记录
+ * 排行榜弹窗类，支持按难度和时间筛选并显示所有超过1000分的记录
+ * 对话框立即显示，记录由 SwingWorker 在后台线程上加载；表格使用 LeaderboardTableModel，
+ * 只按记录号读取可见行，筛选和排序都在原模型上更新，不重建模型。
+ * 点击“分数”或“时间”列标题按该列排序，再次点击切换升序/降序。
+ * “统计”页显示各难度的分数分布和最近 DAILY_DAYS 天每天的记录数，来自 LeaderboardManager.getStats，同样在后台加载。
  */
 public class LeaderboardDialog extends JDialog {
+    private static final int DAILY_DAYS = 14;    // 统计页显示的天数
+    
     private JTable table;
     private JComboBox<String> difficultyBox;
+    private JComboBox<String> periodBox;
+    private JLabel statusLabel;
+    private final DefaultTableModel summaryModel = new DefaultTableModel(
+        new String[] {"难度", "记录数", "平均", "中位数", "p90", "p99", "最高"}, 0);
+    private final DefaultTableModel dailyModel = new DefaultTableModel();
+    private final LeaderboardTableModel model = new LeaderboardTableModel();
     private LeaderboardManager manager;
-    private List<LeaderboardManager.Record> allRecords;
 
     public LeaderboardDialog(JFrame parent, LeaderboardManager manager) {
         super(parent, "排行榜", true);
         this.manager = manager;
-        this.allRecords = manager.loadRecords();
-        setSize(420, 350);
+        setSize(520, 400);
         setLocationRelativeTo(parent);
         setLayout(new BorderLayout());
 
         // 难度选择下拉框
-        String[] difficulties = {"全部", "简单", "中等", "困难", "专家", "大师"};
+        String[] difficulties = new String[DifficultyManager.getLevelCount() + 1];
+        difficulties[0] = "全部";
+        for (int i = 0; i < DifficultyManager.getLevelCount(); i++) {
+            difficulties[i + 1] = DifficultyManager.getLevelName(i);
+        }
         difficultyBox = new JComboBox<>(difficulties);
         difficultyBox.addActionListener(e -> refreshTable());
+        // 时间范围下拉框
+        String[] periods = {"全部", "今天", "最近7天", "最近30天"};
+        periodBox = new JComboBox<>(periods);
+        periodBox.addActionListener(e -> refreshTable());
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         topPanel.add(new JLabel("筛选难度："));
         topPanel.add(difficultyBox);
+        topPanel.add(new JLabel("时间："));
+        topPanel.add(periodBox);
         add(topPanel, BorderLayout.NORTH);
 
         // 表格
-        table = new JTable();
+        table = new JTable(model);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+                if (column == LeaderboardTableModel.SCORE_COLUMN || column == LeaderboardTableModel.TIME_COLUMN) {
+                    boolean byTime = column == LeaderboardTableModel.TIME_COLUMN;
+                    // 同一列再次点击切换方向，换列时默认降序
+                    boolean descending = byTime != model.isSortedByTime() || !model.isDescending();
+                    model.setSort(byTime, descending);
+                    updateHeader();
+                }
+            }
+        });
+        updateHeader();
         JScrollPane scrollPane = new JScrollPane(table);
-        add(scrollPane, BorderLayout.CENTER);
+        statusLabel = new JLabel("正在加载…");
+        add(statusLabel, BorderLayout.SOUTH);
+        
+        // 统计页：上方为各难度的分数分布，下方为每天的记录数
+        JTable summaryTable = new JTable(summaryModel);
+        summaryTable.setEnabled(false);
+        summaryTable.setPreferredScrollableViewportSize(new Dimension(480, 110));
+        JTable dailyTable = new JTable(dailyModel);
+        dailyTable.setEnabled(false);
+        JPanel statsPanel = new JPanel(new BorderLayout());
+        statsPanel.add(new JScrollPane(summaryTable), BorderLayout.NORTH);
+        statsPanel.add(new JScrollPane(dailyTable), BorderLayout.CENTER);
+        
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("记录", scrollPane);
+        tabs.addTab("统计", statsPanel);
+        add(tabs, BorderLayout.CENTER);
 
-        refreshTable();
+        load();
+        loadStats();
         
         // 禁用默认按钮，防止空格键触发
         getRootPane().setDefaultButton(null);
@@ -55,20 +110,111 @@ public class LeaderboardDialog extends JDialog {
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
     }
 
+    /**
+     * 在后台线程上加载排行榜索引，完成后在EDT上填入表格
+     */
+    private void load() {
+        new SwingWorker<LeaderboardIndex, Void>() {
+            @Override
+            protected LeaderboardIndex doInBackground() {
+                return manager.getIndex();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    model.setIndex(get());
+                    refreshTable();
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText("无法加载排行榜: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 在后台线程上获取分数统计，完成后在EDT上填入统计页
+     */
+    private void loadStats() {
+        new SwingWorker<LeaderboardStats, Void>() {
+            @Override
+            protected LeaderboardStats doInBackground() {
+                return manager.getStats();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    showStats(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    summaryModel.addRow(new Object[] {"无法加载统计: " + e.getMessage()});
+                }
+            }
+        }.execute();
+    }
+
+    //把统计填入统计页的两个表格
+    private void showStats(LeaderboardStats stats) {
+        int levels = DifficultyManager.getLevelCount();
+        String[] names = new String[levels + 1];
+        names[0] = "全部";
+        for (int i = 0; i < levels; i++) {
+            names[i + 1] = DifficultyManager.getLevelName(i);
+        }
+        for (String name : names) {
+            ScoreSketch sketch = stats.get(name.equals("全部") ? null : name);
+            summaryModel.addRow(new Object[] {name, sketch.getCount(), String.format("%.0f", sketch.getMean()),
+                sketch.percentile(0.5), sketch.percentile(0.9), sketch.percentile(0.99), sketch.getMax()});
+        }
+        
+        String[] columns = new String[names.length + 1];
+        columns[0] = "日期";
+        System.arraycopy(names, 0, columns, 1, names.length);
+        dailyModel.setColumnIdentifiers(columns);
+        LocalDate today = LocalDate.now();
+        for (int d = 0; d < DAILY_DAYS; d++) {
+            LocalDate date = today.minusDays(d);
+            Object[] row = new Object[columns.length];
+            row[0] = date.toString();
+            for (int i = 0; i < names.length; i++) {
+                row[i + 1] = stats.get(i == 0 ? null : names[i]).getDailyCount((int) date.toEpochDay());
+            }
+            dailyModel.addRow(row);
+        }
+    }
+
     private void refreshTable() {
         String selected = (String) difficultyBox.getSelectedItem();
-        List<LeaderboardManager.Record> filtered = allRecords.stream()
-                .filter(r -> r.score > 1000)
-                .filter(r -> selected.equals("全部") || r.difficulty.equals(selected))
-                .sorted((a, b) -> b.score - a.score)
-                .collect(Collectors.toList());
-        String[] columns = {"分数", "难度", "时间"};
-        Object[][] data = new Object[filtered.size()][3];
-        for (int i = 0; i < filtered.size(); i++) {
-            data[i][0] = filtered.get(i).score;
-            data[i][1] = filtered.get(i).difficulty;
-            data[i][2] = filtered.get(i).time;
+        String difficulty = selected.equals("全部") ? null : selected;
+        model.setFilter(difficulty, periodStart());
+        statusLabel.setText("共 " + model.getRowCount() + " 条记录");
+    }
+
+    //在排序列的标题上标出排序方向
+    private void updateHeader() {
+        JTableHeader header = table.getTableHeader();
+        String arrow = model.isDescending() ? " ▼" : " ▲";
+        int sorted = model.isSortedByTime() ? LeaderboardTableModel.TIME_COLUMN : LeaderboardTableModel.SCORE_COLUMN;
+        for (int i = 0; i < model.getColumnCount(); i++) {
+            int column = table.convertColumnIndexToModel(i);
+            String name = model.getColumnName(column);
+            header.getColumnModel().getColumn(i).setHeaderValue(column == sorted ? name + arrow : name);
+        }
+        header.repaint();
+    }
+
+    //所选时间范围的起始时间（epoch毫秒），Long.MIN_VALUE表示不限
+    private long periodStart() {
+        LocalDate today = LocalDate.now();
+        switch (periodBox.getSelectedIndex()) {
+            case 1:
+                return LeaderboardIndex.toMillis(today.atStartOfDay());
+            case 2:
+                return LeaderboardIndex.toMillis(today.minusDays(6).atStartOfDay());
+            case 3:
+                return LeaderboardIndex.toMillis(today.minusDays(29).atStartOfDay());
+            default:
+                return Long.MIN_VALUE;
         }
-        table.setModel(new DefaultTableModel(data, columns));
     }
 } 
\ No newline at end of file
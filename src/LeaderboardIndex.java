@@ -0,0 +1,465 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * 排行榜内存索引
+ * 记录按加入顺序编号（记录号），分数、难度等级和时间保存在基本类型数组中；
+ * 在此之上维护两类有序索引：每个难度（以及“全部”）按分数降序排列的记录号，和按时间升序排列的记录号。
+ * 前N名、某个分数的排名、时间范围查询都只需二分查找，不需要扫描全部记录。
+ * 有序索引只保存记录号，比较时回到列中取值，每条记录总共约占 4 + 1 + 8 + 3 × 4 字节。
+ *
+ * 批量加入（append）后调用 reindex：新记录不多时逐条二分插入，否则把新记录单独排序后与已有的有序索引线性合并；
+ * 单条加入（add）用二分查找插入，保持索引有序。
+ * 本类不是线程安全的：LeaderboardManager 只在加锁时修改尚未发布的索引，发布之后只读（见 copy，副本与原索引共享数组）。
+ */
+public class LeaderboardIndex {
+    public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int INSERT_LIMIT = 64;  // reindex 时逐条插入的最大新记录数，超过时排序后合并
+
+    // 记录的列，下标为记录号
+    private int size;
+    private int[] scores = new int[16];
+    private byte[] levels = new byte[16];    // 难度等级（DifficultyManager的等级序号）
+    private long[] times = new long[16];     // 时间（epoch毫秒）
+
+    private final SortedIds allByScore = new SortedIds(false);
+    private final SortedIds[] levelByScore = new SortedIds[DifficultyManager.getLevelCount()];
+    private final SortedIds byTime = new SortedIds(true);
+    private int indexed;                     // 已经进入有序索引的记录数
+
+    public LeaderboardIndex() {
+        for (int i = 0; i < levelByScore.length; i++) {
+            levelByScore[i] = new SortedIds(false);
+        }
+    }
+
+    /**
+     * 加入一条记录并立即更新索引
+     * @param level 难度等级
+     * @return 记录号
+     */
+    public int add(int score, int level, long time) {
+        reindex();
+        int id = append(score, level, time);
+        insert(id);
+        indexed = size;
+        return id;
+    }
+
+    /**
+     * 只加入记录，不更新索引；批量加入完成后必须调用 reindex
+     * @param level 难度等级
+     * @return 记录号
+     */
+    public int append(int score, int level, long time) {
+        if (level < 0 || level >= levelByScore.length) {
+            throw new IllegalArgumentException("无效的难度等级: " + level);
+        }
+        if (size == scores.length) {
+            int capacity = size * 2;
+            scores = Arrays.copyOf(scores, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        scores[size] = score;
+        levels[size] = (byte) level;
+        times[size] = time;
+        return size++;
+    }
+
+    /**
+     * 预留容量，批量加载已知条数的记录时避免反复扩容
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > scores.length) {
+            scores = Arrays.copyOf(scores, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+    }
+
+    /**
+     * 把 append 加入的记录纳入索引
+     * 新记录不超过 INSERT_LIMIT 条时逐条插入（每条O(n)移动）；
+     * 否则把新记录按各索引分别排序（O(k)基数排序），再与已有的有序索引线性合并，总共O(n + k)
+     */
+    public void reindex() {
+        if (indexed == size) {
+            return;
+        }
+        if (size - indexed <= INSERT_LIMIT) {
+            for (int id = indexed; id < size; id++) {
+                insert(id);
+            }
+        } else {
+            SortedIds newByScore = new SortedIds(false);
+            SortedIds[] newLevelByScore = new SortedIds[levelByScore.length];
+            for (int i = 0; i < newLevelByScore.length; i++) {
+                newLevelByScore[i] = new SortedIds(false);
+            }
+            SortedIds newByTime = new SortedIds(true);
+            for (int id = indexed; id < size; id++) {
+                newByScore.append(id);
+                newLevelByScore[levels[id]].append(id);
+                newByTime.append(id);
+            }
+            allByScore.merge(newByScore);
+            for (int i = 0; i < levelByScore.length; i++) {
+                levelByScore[i].merge(newLevelByScore[i]);
+            }
+            byTime.merge(newByTime);
+        }
+        indexed = size;
+    }
+
+    /**
+     * 复制一份索引，之后向副本加入记录不影响本索引
+     * LeaderboardManager 在副本上读入新增记录再发布，已经交给EDT的索引不再被修改。
+     * 副本与本索引共享列数组和有序索引数组，复制本身是O(1)：列和有序索引只在末尾之后追加，本索引只读到自己的 size 为止；
+     * 有序索引要在中间插入或合并时才复制自己的数组（写时复制），因此每次加入新记录后只复制发生变化的有序索引
+     * （按分数的总索引和新记录所在难度的索引，按时间追加的记录不需要复制按时间的索引），开销为这些索引的长度。
+     * 复制之后本索引不能再加入记录，同一个索引复制出的多个副本中也只能有一个加入记录
+     */
+    public LeaderboardIndex copy() {
+        reindex();
+        LeaderboardIndex copy = new LeaderboardIndex();
+        copy.size = size;
+        copy.scores = scores;
+        copy.levels = levels;
+        copy.times = times;
+        copy.allByScore.copyFrom(allByScore);
+        for (int i = 0; i < levelByScore.length; i++) {
+            copy.levelByScore[i].copyFrom(levelByScore[i]);
+        }
+        copy.byTime.copyFrom(byTime);
+        copy.indexed = indexed;
+        return copy;
+    }
+
+    //记录总数
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 某个难度的记录数
+     * @param difficulty 难度名称，null表示全部难度
+     */
+    public int count(String difficulty) {
+        SortedIds ids = scoreIndex(difficulty);
+        return ids == null ? 0 : ids.size;
+    }
+
+    /**
+     * 分数最高的前n条记录（分数相同时先加入的在前）
+     * @param difficulty 难度名称，null表示全部难度
+     * @param n 最多返回的条数
+     * @return 记录号数组
+     */
+    public int[] top(String difficulty, int n) {
+        SortedIds ids = scoreIndex(difficulty);
+        if (ids == null) {
+            return new int[0];
+        }
+        return Arrays.copyOf(ids.ids, Math.min(n, ids.size));
+    }
+
+    /**
+     * 分数不低于minScore的记录数，即这些记录正好是 top 结果的前若干条
+     * @param difficulty 难度名称，null表示全部难度
+     */
+    public int countAtLeast(String difficulty, int minScore) {
+        SortedIds ids = scoreIndex(difficulty);
+        return ids == null ? 0 : ids.upperBound(scoreKey(minScore));
+    }
+
+    /**
+     * 某个分数在排行榜中的名次（1表示第一名），与它同分的记录不计入
+     * @param difficulty 难度名称，null表示全部难度
+     */
+    public int rankOf(String difficulty, int score) {
+        SortedIds ids = scoreIndex(difficulty);
+        return ids == null ? 1 : ids.lowerBound(scoreKey(score)) + 1;
+    }
+
+    /**
+     * 时间在 [from, to) 之间的记录，按时间先后排列
+     * @param from 起始时间（epoch毫秒，包含）
+     * @param to 结束时间（epoch毫秒，不包含）
+     * @return 记录号数组
+     */
+    public int[] between(long from, long to) {
+        reindex();
+        int start = byTime.lowerBound(from);
+        int end = Math.max(start, byTime.lowerBound(to));
+        return Arrays.copyOfRange(byTime.ids, start, end);
+    }
+
+    /**
+     * 把满足条件的记录号按顺序写入dest，不分配临时数组
+     * 按分数排序时只遍历该难度分数不低于minScore的前缀；按时间排序时只遍历时间范围内的部分
+     * @param difficulty 难度名称，null表示全部难度
+     * @param minScore 最低分数（包含）
+     * @param from 起始时间（epoch毫秒，包含）
+     * @param to 结束时间（epoch毫秒，不包含）
+     * @param timeOrder true按时间升序，false按分数降序
+     * @param dest 目标数组，长度至少为 size()
+     * @return 写入的条数
+     */
+    public int select(String difficulty, int minScore, long from, long to, boolean timeOrder, int[] dest) {
+        int level = difficulty == null ? -1 : DifficultyManager.levelOf(difficulty);
+        if (difficulty != null && level < 0) {
+            return 0;
+        }
+        reindex();
+        int count = 0;
+        if (timeOrder) {
+            int end = byTime.lowerBound(to);
+            for (int i = byTime.lowerBound(from); i < end; i++) {
+                int id = byTime.ids[i];
+                if ((level < 0 || levels[id] == level) && scores[id] >= minScore) {
+                    dest[count++] = id;
+                }
+            }
+        } else {
+            SortedIds ids = level < 0 ? allByScore : levelByScore[level];
+            int end = ids.upperBound(scoreKey(minScore));
+            for (int i = 0; i < end; i++) {
+                int id = ids.ids[i];
+                if (times[id] >= from && times[id] < to) {
+                    dest[count++] = id;
+                }
+            }
+        }
+        return count;
+    }
+
+    public int getScore(int id) {
+        return scores[id];
+    }
+
+    //获取难度等级
+    public int getLevel(int id) {
+        return levels[id];
+    }
+
+    public String getDifficulty(int id) {
+        return DifficultyManager.getLevelName(levels[id]);
+    }
+
+    //获取记录时间（epoch毫秒）
+    public long getTime(int id) {
+        return times[id];
+    }
+
+    //获取格式化后的记录时间
+    public String formatTime(int id) {
+        return format(times[id]);
+    }
+
+    /**
+     * 把本地时间转换为epoch毫秒
+     */
+    public static long toMillis(LocalDateTime time) {
+        return time.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 把epoch毫秒格式化为 yyyy-MM-dd HH:mm:ss 本地时间
+     */
+    public static String format(long millis) {
+        return TIME_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE));
+    }
+
+    private SortedIds scoreIndex(String difficulty) {
+        reindex();
+        if (difficulty == null) {
+            return allByScore;
+        }
+        int level = DifficultyManager.levelOf(difficulty);
+        return level < 0 ? null : levelByScore[level];
+    }
+
+    private void insert(int id) {
+        allByScore.insert(id);
+        levelByScore[levels[id]].insert(id);
+        byTime.insert(id);
+    }
+
+    //分数的排序键：键升序即分数降序
+    private static long scoreKey(int score) {
+        return -(long) score;
+    }
+
+    /**
+     * 按键升序排列的记录号，键相同时记录号小的在前
+     * 键不单独保存，而是按记录号从分数列或时间列中取得
+     */
+    private final class SortedIds {
+        private final boolean byTime;
+        int[] ids = new int[16];
+        int size;
+        boolean shared;                      // ids 与被复制的索引共享，[0, size) 范围内不能修改
+
+        SortedIds(boolean byTime) {
+            this.byTime = byTime;
+        }
+
+        long key(int id) {
+            return byTime ? times[id] : scoreKey(scores[id]);
+        }
+
+        //与other共享数组，直到需要修改已有部分时才复制
+        void copyFrom(SortedIds other) {
+            ids = other.ids;
+            size = other.size;
+            shared = true;
+        }
+
+        void append(int id) {
+            grow();
+            ids[size++] = id;
+        }
+
+        //插入到所有相同键之后，使记录号保持升序
+        void insert(int id) {
+            int pos = upperBound(key(id));
+            if (shared && pos < size) {
+                int[] copy = new int[Math.max(ids.length, size + 1)];
+                System.arraycopy(ids, 0, copy, 0, pos);
+                System.arraycopy(ids, pos, copy, pos + 1, size - pos);
+                ids = copy;
+                shared = false;
+            } else {
+                grow();
+                System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            }
+            ids[pos] = id;
+            size++;
+        }
+
+        /**
+         * 合并记录号都大于已有记录号的added（调用后added不再使用）
+         * added先按键排序，再与已有的记录号线性归并，键相同时已有的在前，与记录号顺序一致；
+         * added的键都不小于已有的最大键时（按时间追加的记录）直接接在末尾
+         */
+        void merge(SortedIds added) {
+            if (added.size == 0) {
+                return;
+            }
+            added.sort();
+            if (size == 0) {
+                ids = added.ids;
+                size = added.size;
+                shared = false;
+                return;
+            }
+            if (key(added.ids[0]) >= key(ids[size - 1])) {
+                if (size + added.size > ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + added.size));
+                    shared = false;
+                }
+                System.arraycopy(added.ids, 0, ids, size, added.size);
+                size += added.size;
+                return;
+            }
+            int[] merged = new int[size + added.size];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < size && j < added.size) {
+                merged[n++] = key(added.ids[j]) < key(ids[i]) ? added.ids[j++] : ids[i++];
+            }
+            System.arraycopy(ids, i, merged, n, size - i);
+            n += size - i;
+            System.arraycopy(added.ids, j, merged, n, added.size - j);
+            ids = merged;
+            size += added.size;
+            shared = false;
+        }
+
+        //第一个键不小于key的位置
+        int lowerBound(long key) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key(ids[mid]) < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        //第一个键大于key的位置
+        int upperBound(long key) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key(ids[mid]) <= key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 按键排序，键相同时保持记录号顺序
+         * 用每趟16位的LSD基数排序，时间复杂度O(n)；已经有序时（按时间追加的记录）直接返回。
+         * 排序会改写 [0, size) 范围，只用于 reindex 中新建的不共享的数组
+         */
+        void sort() {
+            boolean sorted = true;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                long key = key(ids[i]);
+                if (i > 0 && key < key(ids[i - 1])) {
+                    sorted = false;
+                }
+                min = Math.min(min, key);
+                max = Math.max(max, key);
+            }
+            if (sorted) {
+                return;
+            }
+            // 减去最小值后按无符号数排序，只需覆盖键的实际取值范围
+            int bits = 64 - Long.numberOfLeadingZeros(max - min);
+            int[] src = ids;
+            int[] dst = new int[ids.length];
+            int[] counts = new int[0x10001];
+            for (int shift = 0; shift < bits; shift += 16) {
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < size; i++) {
+                    counts[(int) (((key(src[i]) - min) >>> shift) & 0xFFFF) + 1]++;
+                }
+                for (int b = 0; b < 0x10000; b++) {
+                    counts[b + 1] += counts[b];
+                }
+                for (int i = 0; i < size; i++) {
+                    dst[counts[(int) (((key(src[i]) - min) >>> shift) & 0xFFFF)]++] = src[i];
+                }
+                int[] swap = src;
+                src = dst;
+                dst = swap;
+            }
+            ids = src;
+        }
+
+        private void grow() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                shared = false;
+            }
+        }
+    }
+}
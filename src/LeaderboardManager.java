@@ -1,60 +1,369 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 
 /**
  * 排行榜管理类，负责保存和读取排行榜数据
+ *
+ * 记录保存在二进制文件 leaderboard.dat 中（格式见 LeaderboardStore），每条16字节。
+ * 所有实例共享同一个 LeaderboardIndex：第一次查询时从映射内存读入全部记录，之后只读取新增的记录
+ * （其他进程追加的记录也会被读到）。已经返回给调用者的索引不再修改：有新增记录时复制一份、读入后再替换，
+ * 因此EDT可以不加锁地读取手中的索引，同时后台线程刷新。saveRecord 只把记录放入待写队列，由 PersistenceWriter 在后台线程上
+ * 成批追加到文件；getIndex 先写出仍在队列中的记录，再把文件新增的记录读入索引。
+ * 各难度的分数统计（LeaderboardStats）同样在第一次查询时建立，之后随记录追加逐条更新。
+ * 压缩在持有文件锁时原地改写文件并更换文件头中的代号，本进程和其他进程读取时发现代号变化就丢弃读取进度从头读取。
+ * 第一次打开时如果只有旧的 leaderboard.txt，会把其中的记录迁移到二进制文件，并把原文件改名为 .bak。
  */
 public class LeaderboardManager {
-    private static final String FILE = "leaderboard.txt";
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    public static final int MIN_SCORE = 1000;    // 只有超过该分数的成绩才记入排行榜
+    private static final String FILE = "leaderboard.dat";
+    private static final String LEGACY_FILE = "leaderboard.txt";
+    private static final int TIME_LENGTH = 19;   // "yyyy-MM-dd HH:mm:ss" 的长度
 
-    public static class Record {
-        public int score;
-        public String difficulty;
-        public String time;
-        public Record(int score, String difficulty, String time) {
-            this.score = score;
-            this.difficulty = difficulty;
-            this.time = time;
-        }
-    }
+    // 共享的存储、索引及已经读入索引的记录数，只在持有类锁时访问
+    private static LeaderboardStore store;
+    private static LeaderboardIndex index;
+    private static long indexedCount;
+    private static LeaderboardStats stats;       // 分数统计，尚未建立时为null
+    private static long statsCount;              // 已计入统计的文件记录数
+    private static int storeGeneration;          // 索引和统计对应的文件代号（LeaderboardStore.generation）
+
+    // 尚未写入文件的记录，只在持有类锁时访问
+    private static int pendingCount;
+    private static int[] pendingScores = new int[16];
+    private static int[] pendingLevels = new int[16];
+    private static long[] pendingTimes = new long[16];
 
     /**
      * 保存一条新纪录
+     * 只把记录放入待写队列后立即返回，实际写入在 PersistenceWriter 的后台线程上成批进行
      */
     public void saveRecord(int score, String difficulty) {
-        String time = DATE_FORMAT.format(new Date());
-        String line = score + "," + difficulty + "," + time + "\n";
-        try {
-            Files.write(Paths.get(FILE), line.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            System.err.println("无法保存排行榜记录: " + e.getMessage());
-        }
-    }
-
-    /**
-     * 读取所有排行榜记录
-     */
-    public List<Record> loadRecords() {
-        List<Record> list = new ArrayList<>();
-        try {
-            if (Files.exists(Paths.get(FILE))) {
-                List<String> lines = Files.readAllLines(Paths.get(FILE));
-                for (String line : lines) {
-                    String[] parts = line.split(",");
-                    if (parts.length == 3) {
-                        int score = Integer.parseInt(parts[0]);
-                        String difficulty = parts[1];
-                        String time = parts[2];
-                        list.add(new Record(score, difficulty, time));
+        int level = DifficultyManager.levelOf(difficulty);
+        if (level < 0) {
+            System.err.println("无法保存排行榜记录: 未知难度 " + difficulty);
+            return;
+        }
+        long time = System.currentTimeMillis() / 1000 * 1000;
+        synchronized (LeaderboardManager.class) {
+            if (pendingCount == pendingScores.length) {
+                pendingScores = Arrays.copyOf(pendingScores, pendingCount * 2);
+                pendingLevels = Arrays.copyOf(pendingLevels, pendingCount * 2);
+                pendingTimes = Arrays.copyOf(pendingTimes, pendingCount * 2);
+            }
+            pendingScores[pendingCount] = score;
+            pendingLevels[pendingCount] = level;
+            pendingTimes[pendingCount] = time;
+            // 队列从空变为非空时提交一次写出任务，之后的记录在同一批中写出
+            if (pendingCount++ == 0) {
+                PersistenceWriter.shared().execute(LeaderboardManager::flushPending);
+            }
+        }
+    }
+
+    /**
+     * 把待写的记录一次性追加到文件
+     * 这里不修改索引（索引只在调用 getIndex 的线程上修改），新记录在下次查询时作为新增部分读入
+     */
+    private static void flushPending() {
+        synchronized (LeaderboardManager.class) {
+            if (pendingCount == 0) {
+                return;
+            }
+            try {
+                open();
+                long existing = store.append(pendingScores, pendingLevels, pendingTimes, pendingCount);
+                checkReplaced();
+                // 统计与文件同步时直接加入新记录；有其他进程的记录插在中间时留给 getStats 从文件补读
+                if (stats != null && statsCount == existing) {
+                    for (int i = 0; i < pendingCount; i++) {
+                        stats.add(pendingScores[i], pendingLevels[i], pendingTimes[i]);
                     }
+                    statsCount += pendingCount;
+                }
+            } catch (IOException e) {
+                System.err.println("无法保存排行榜记录: " + e.getMessage());
+            }
+            pendingCount = 0;
+        }
+    }
+
+    /**
+     * 获取已经加载的排行榜索引，不读取文件，也不包含上次 getIndex 之后保存的记录
+     * @return 共享索引，尚未加载时返回null
+     */
+    public LeaderboardIndex peekIndex() {
+        synchronized (LeaderboardManager.class) {
+            return index;
+        }
+    }
+
+    /**
+     * 查询某个分数在已加载索引中的名次，不读取文件
+     * 与后台线程上的 getIndex 互斥，可在EDT上调用
+     * @param difficulty 难度名称，null表示全部难度
+     * @return 名次（1表示第一名），索引尚未加载时返回0
+     */
+    public int peekRank(String difficulty, int score) {
+        synchronized (LeaderboardManager.class) {
+            return index == null ? 0 : index.rankOf(difficulty, score);
+        }
+    }
+
+    /**
+     * 获取排行榜索引，必要时读取文件新增的记录
+     * 可以在后台线程上调用（例如 LeaderboardDialog 的 SwingWorker）；
+     * 返回的索引由所有实例共享且不会再被修改，之后的新增记录读入它的副本，由下一次调用返回
+     */
+    public LeaderboardIndex getIndex() {
+        synchronized (LeaderboardManager.class) {
+            flushPending();
+            try {
+                open();
+                while (true) {
+                    checkReplaced();
+                    if (index == null) {
+                        index = new LeaderboardIndex();
+                        indexedCount = 0;
+                    }
+                    if (store.count() <= indexedCount) {
+                        break;
+                    }
+                    boolean firstLoad = indexedCount == 0;
+                    // 在副本上读入新增记录后再替换，其他线程手中的旧索引保持不变
+                    LeaderboardIndex next = firstLoad ? new LeaderboardIndex() : index.copy();
+                    long count = store.readInto(next, indexedCount);
+                    if (store.generation() != storeGeneration) {
+                        continue;   // 读取期间其他进程压缩了文件，读到的记录作废
+                    }
+                    next.reindex();
+                    index = next;
+                    indexedCount = count;
+                    // 外部写入的低分记录占比较大时压缩文件
+                    if (firstLoad && index.size() - index.countAtLeast(null, MIN_SCORE + 1) > index.size() / 8) {
+                        compact();
+                    }
+                    break;
+                }
+            } catch (IOException e) {
+                System.err.println("无法读取排行榜: " + e.getMessage());
+                if (index == null) {
+                    index = new LeaderboardIndex();
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 获取各难度的分数统计
+     * 第一次调用时把文件分块并行统计；之后保存的记录在追加时已经计入，只需补读其他进程追加的记录。
+     * 可以在后台线程上调用
+     * @return 统计的副本，之后的记录不会改变它
+     */
+    public LeaderboardStats getStats() {
+        synchronized (LeaderboardManager.class) {
+            flushPending();
+            try {
+                open();
+                // 读取期间其他进程压缩了文件时，checkReplaced 丢弃这次的统计并重新建立
+                do {
+                    checkReplaced();
+                    long count = store.count();
+                    if (stats == null || count < statsCount) {
+                        stats = LeaderboardStats.build(store, count);
+                    } else if (count > statsCount) {
+                        store.mapTo(count);
+                        store.scan(statsCount, count, stats::add);
+                    }
+                    statsCount = count;
+                } while (store.generation() != storeGeneration);
+            } catch (IOException e) {
+                System.err.println("无法读取排行榜统计: " + e.getMessage());
+                if (stats == null) {
+                    return new LeaderboardStats();
+                }
+            }
+            return stats.copy();
+        }
+    }
+
+    /**
+     * 压缩排行榜文件：删除不超过 MIN_SCORE 的记录，并重新建立索引
+     * 压缩期间持有文件锁，其他进程的追加不会丢失（见 LeaderboardStore.compact）
+     * @return 保留的记录数
+     */
+    public int compact() throws IOException {
+        synchronized (LeaderboardManager.class) {
+            flushPending();
+            open();
+            int kept = store.compact(MIN_SCORE + 1);
+            checkReplaced();
+            getIndex();
+            return kept;
+        }
+    }
+
+    /**
+     * 文件被压缩（本进程或其他进程）之后，已读入的记录序号不再对应文件中的记录，
+     * 丢弃索引和统计的读取进度，下次从头读取；已经发布的索引不受影响
+     */
+    private static void checkReplaced() {
+        if (store.generation() != storeGeneration) {
+            storeGeneration = store.generation();
+            index = null;
+            indexedCount = 0;
+            stats = null;
+            statsCount = 0;
+        }
+    }
+
+    /**
+     * 打开二进制文件，必要时先从旧的CSV文件迁移
+     */
+    private static void open() throws IOException {
+        if (store != null) {
+            return;
+        }
+        Path path = Paths.get(FILE);
+        Path legacy = Paths.get(LEGACY_FILE);
+        if (!Files.exists(path) && Files.exists(legacy)) {
+            LeaderboardIndex migrated = new LeaderboardIndex();
+            parse(legacy, migrated);
+            int kept = LeaderboardStore.write(path, migrated, MIN_SCORE + 1, 0);
+            Files.move(legacy, legacy.resolveSibling(LEGACY_FILE + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("已将 " + LEGACY_FILE + " 中的 " + kept + " 条记录迁移到 " + FILE);
+        }
+        store = new LeaderboardStore(path);
+    }
+
+    /**
+     * 解析整个旧CSV文件并加入索引，最后一行没有换行符时同样解析
+     */
+    private static void parse(Path path, LeaderboardIndex into) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        LineParser parser = new LineParser(into);
+        int pos = 0;
+        while (pos < data.length) {
+            int end = pos;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            parser.parse(data, pos, end);
+            pos = end + 1;
+        }
+        into.reindex();
+    }
+
+    /**
+     * 逐行解析 “分数,难度,yyyy-MM-dd HH:mm:ss”
+     * 直接在字节上解析，不拆分字符串；难度名称与已出现过的名称按字节比较后复用同一个字符串，
+     * 同一天的时间只换算一次当天零点，因此按时间顺序追加的文件几乎不分配对象。格式不正确或难度未知的行被跳过。
+     */
+    private static final class LineParser {
+        private final LeaderboardIndex into;
+        private final List<byte[]> nameBytes = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private int cachedDate = -1;       // 缓存的日期 yyyyMMdd
+        private long cachedDayStart;       // 该日期零点的epoch毫秒
+        private boolean cachedDayUniform;  // 该日期是否正好24小时（没有夏令时切换）
+
+        LineParser(LeaderboardIndex into) {
+            this.into = into;
+        }
+
+        void parse(byte[] data, int start, int end) {
+            if (end > start && data[end - 1] == '\r') {
+                end--;
+            }
+            int pos = start;
+            boolean negative = pos < end && data[pos] == '-';
+            if (negative) {
+                pos++;
+            }
+            int digits = pos;
+            long score = 0;
+            while (pos < end && data[pos] >= '0' && data[pos] <= '9' && score <= Integer.MAX_VALUE) {
+                score = score * 10 + (data[pos++] - '0');
+            }
+            if (pos == digits || pos == end || data[pos] != ',' || score > Integer.MAX_VALUE) {
+                return;
+            }
+            int difficultyStart = ++pos;
+            while (pos < end && data[pos] != ',') {
+                pos++;
+            }
+            if (pos == end || end - (pos + 1) != TIME_LENGTH) {
+                return;
+            }
+            int level = DifficultyManager.levelOf(name(data, difficultyStart, pos));
+            long time = time(data, pos + 1);
+            if (level >= 0 && time != Long.MIN_VALUE) {
+                into.append((int) (negative ? -score : score), level, time);
+            }
+        }
+
+        //获取[start, end)字节对应的难度名称
+        private String name(byte[] data, int start, int end) {
+            for (int i = 0; i < nameBytes.size(); i++) {
+                byte[] bytes = nameBytes.get(i);
+                if (bytes.length == end - start && Arrays.equals(bytes, 0, bytes.length, data, start, end)) {
+                    return names.get(i);
                 }
             }
-        } catch (IOException e) {
-            System.err.println("无法读取排行榜: " + e.getMessage());
+            String name = new String(data, start, end - start, StandardCharsets.UTF_8);
+            if (names.size() < 16) {
+                nameBytes.add(Arrays.copyOfRange(data, start, end));
+                names.add(name);
+            }
+            return name;
+        }
+
+        //解析从t开始的 yyyy-MM-dd HH:mm:ss，格式不正确时返回Long.MIN_VALUE
+        private long time(byte[] data, int t) {
+            int year = digits(data, t, 4);
+            int month = digits(data, t + 5, 2);
+            int day = digits(data, t + 8, 2);
+            int hour = digits(data, t + 11, 2);
+            int minute = digits(data, t + 14, 2);
+            int second = digits(data, t + 17, 2);
+            if ((year | month | day | hour | minute | second) < 0 || hour > 23 || minute > 59 || second > 59) {
+                return Long.MIN_VALUE;
+            }
+            int date = year * 10000 + month * 100 + day;
+            if (date != cachedDate) {
+                LocalDate localDate;
+                try {
+                    localDate = LocalDate.of(year, month, day);
+                } catch (DateTimeException e) {
+                    return Long.MIN_VALUE;
+                }
+                cachedDate = date;
+                cachedDayStart = LeaderboardIndex.toMillis(localDate.atStartOfDay());
+                long nextDayStart = LeaderboardIndex.toMillis(localDate.plusDays(1).atStartOfDay());
+                cachedDayUniform = nextDayStart - cachedDayStart == 86_400_000L;
+            }
+            if (!cachedDayUniform) {
+                return LeaderboardIndex.toMillis(LocalDateTime.of(year, month, day, hour, minute, second));
+            }
+            return cachedDayStart + ((hour * 60L + minute) * 60 + second) * 1000;
+        }
+    }
+
+    //解析固定位数的十进制数，含非数字字符时返回-1
+    private static int digits(byte[] data, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = data[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
         }
-        return list;
+        return value;
     }
-} 
\ No newline at end of file
+}
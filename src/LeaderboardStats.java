@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 排行榜统计
+ * 每个难度以及“全部”各有一个 ScoreSketch，只统计分数超过 LeaderboardManager.MIN_SCORE 的记录。
+ * LeaderboardManager 在追加记录时逐条加入，查询不需要扫描历史；
+ * 第一次建立时用 build 把文件分成若干块，在 ForkJoinPool 上并行统计后合并。
+ * 本类不是线程安全的，由 LeaderboardManager 加锁访问。
+ */
+public class LeaderboardStats {
+    private static final int CHUNK_RECORDS = 1 << 16;     // 并行统计时每块的记录数
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final ScoreSketch all = new ScoreSketch();
+    private final ScoreSketch[] levels = new ScoreSketch[DifficultyManager.getLevelCount()];
+
+    // 上一条记录所在日期的缓存，按时间顺序加入的记录几乎都落在同一天，不必每条都换算日期
+    private long cachedDayStart = Long.MAX_VALUE;
+    private long cachedDayEnd = Long.MIN_VALUE;
+    private int cachedDay;
+
+    public LeaderboardStats() {
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new ScoreSketch();
+        }
+    }
+
+    /**
+     * 并行统计文件中 [0, count) 范围内的记录
+     * @param store 排行榜文件
+     * @param count 记录数
+     */
+    public static LeaderboardStats build(LeaderboardStore store, long count) throws IOException {
+        store.mapTo(count);
+        return ForkJoinPool.commonPool().invoke(new BuildTask(store, 0, count));
+    }
+
+    /**
+     * 加入一条记录，不超过 MIN_SCORE 或难度无效的记录被忽略
+     * @param level 难度等级
+     * @param time 时间（epoch毫秒）
+     */
+    public void add(int score, int level, long time) {
+        if (score <= LeaderboardManager.MIN_SCORE || level < 0 || level >= levels.length) {
+            return;
+        }
+        int day = epochDay(time);
+        all.add(score, day);
+        levels[level].add(score, day);
+    }
+
+    /**
+     * 把另一份统计加到本统计
+     */
+    public void merge(LeaderboardStats other) {
+        all.merge(other.all);
+        for (int i = 0; i < levels.length; i++) {
+            levels[i].merge(other.levels[i]);
+        }
+    }
+
+    //复制一份独立的统计
+    public LeaderboardStats copy() {
+        LeaderboardStats copy = new LeaderboardStats();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * 获取某个难度的分数分布
+     * @param difficulty 难度名称，null表示全部难度
+     * @return 分布摘要（调用方不得修改），未知难度返回null
+     */
+    public ScoreSketch get(String difficulty) {
+        if (difficulty == null) {
+            return all;
+        }
+        int level = DifficultyManager.levelOf(difficulty);
+        return level < 0 ? null : levels[level];
+    }
+
+    //把epoch毫秒换算为本地日期编号（LocalDate.toEpochDay）
+    private int epochDay(long time) {
+        if (time < cachedDayStart || time >= cachedDayEnd) {
+            LocalDate date = Instant.ofEpochMilli(time).atZone(ZONE).toLocalDate();
+            cachedDay = (int) date.toEpochDay();
+            cachedDayStart = date.atStartOfDay(ZONE).toInstant().toEpochMilli();
+            cachedDayEnd = date.plusDays(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
+        }
+        return cachedDay;
+    }
+
+    /**
+     * 把记录范围对半拆分，直到每块不超过 CHUNK_RECORDS 条，各块的统计结果两两合并
+     */
+    private static final class BuildTask extends RecursiveTask<LeaderboardStats> {
+        private static final long serialVersionUID = 1L;
+        private final LeaderboardStore store;
+        private final long from;
+        private final long to;
+
+        BuildTask(LeaderboardStore store, long from, long to) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LeaderboardStats compute() {
+            if (to - from <= CHUNK_RECORDS) {
+                LeaderboardStats stats = new LeaderboardStats();
+                store.scan(from, to, stats::add);
+                return stats;
+            }
+            long mid = (from + to) >>> 1;
+            BuildTask left = new BuildTask(store, from, mid);
+            left.fork();
+            LeaderboardStats right = new BuildTask(store, mid, to).compute();
+            LeaderboardStats merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+}
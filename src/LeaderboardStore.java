@@ -0,0 +1,317 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+
+/**
+ * 排行榜二进制存储
+ * 文件由16字节文件头和定长16字节记录组成，整个文件映射到内存：
+ * <pre>
+ * 文件头：int 魔数 | int 版本 | int 代号 | int 记录数
+ * 记录：  int 分数 | int 难度等级 | long 时间（epoch毫秒）
+ * </pre>
+ * 追加时先写记录再更新文件头中的记录数，读取方只读到记录数为止，因此不会读到写了一半的记录；
+ * 文件按 GROWTH_RECORDS 条预先扩展，大部分追加不需要重新映射。
+ * 读取直接从映射内存取值写入 LeaderboardIndex 的基本类型列，不经过中间字节数组或对象。
+ * 记录数上限受单个映射（2GB）限制，约1.3亿条。
+ *
+ * 文件被映射期间不能被替换（Windows 上有映射视图的文件无法改名覆盖），所以压缩（compact）不换文件，而是原地改写：
+ * 持有文件锁时先把保留的记录完整写成 leaderboard.dat.compact（写完才改名出现，相当于重做日志），
+ * 再把它复制到数据文件开头、更新代号和记录数，最后删除它。中途崩溃时下次 open 在加锁后重新复制一遍。
+ * 代号在复制之前就已改变，其他进程读取前后比较代号（generation）即可发现压缩，丢弃期间读到的内容并从头读取。
+ * 压缩不缩短文件（其他进程可能仍映射着后面的部分），空出的空间留给之后的追加。
+ * 版本1的文件头是 long 记录数，高32位总为0，正好就是代号0，打开时只需把版本改为2。
+ */
+public class LeaderboardStore implements Closeable {
+    private static final int MAGIC = 0x544C4244;          // "TLBD"
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;          // long 记录数的文件头，与代号0的版本2相同
+    private static final int VERSION_OFFSET = 4;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 16;
+    private static final int GROWTH_RECORDS = 4096;       // 每次扩展文件的记录数
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * 逐条接收记录的回调
+     */
+    public interface RecordConsumer {
+        void accept(int score, int level, long time);
+    }
+
+    private final Path path;
+    private final Path pendingPath;                       // 尚未复制到数据文件的压缩结果
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+
+    /**
+     * 打开（不存在时创建）二进制排行榜文件，有未完成的压缩时先完成它
+     * @param path 文件路径
+     * @throws IOException 文件无法打开或不是排行榜文件
+     */
+    public LeaderboardStore(Path path) throws IOException {
+        this.path = path;
+        this.pendingPath = path.resolveSibling(path.getFileName() + ".compact");
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean valid;
+        FileLock lock = channel.lock();
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                remap(HEADER_BYTES + (long) GROWTH_RECORDS * RECORD_BYTES);
+                map.putInt(0, MAGIC);
+                map.putInt(VERSION_OFFSET, VERSION);
+                map.putInt(GENERATION_OFFSET, 0);
+                map.putInt(COUNT_OFFSET, 0);
+            } else {
+                remap(channel.size());
+            }
+            int version = map.getInt(VERSION_OFFSET);
+            valid = map.getInt(0) == MAGIC && (version == VERSION || version == LEGACY_VERSION);
+            if (valid) {
+                map.putInt(VERSION_OFFSET, VERSION);
+                applyPending();
+            }
+        } finally {
+            lock.release();
+        }
+        if (!valid) {
+            channel.close();
+            throw new IOException("不是有效的排行榜文件: " + path);
+        }
+    }
+
+    /**
+     * 获取文件中的记录数（包括其他进程追加的记录）
+     */
+    public long count() {
+        return map.getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * 获取文件的代号，每次压缩加一
+     * 与上次读取时不同说明文件被压缩过，之前的记录序号不再有效，需要从头读取；
+     * 读取前后的代号不同时，期间读到的记录可能不完整
+     */
+    public int generation() {
+        return map.getInt(GENERATION_OFFSET);
+    }
+
+    /**
+     * 追加一条记录
+     * @param level 难度等级
+     * @param time 时间（epoch毫秒）
+     */
+    public void append(int score, int level, long time) throws IOException {
+        append(new int[] {score}, new int[] {level}, new long[] {time}, 1);
+    }
+
+    /**
+     * 一次追加多条记录
+     * 持有文件锁，多个进程同时追加也不会互相覆盖；所有记录写完后才发布新的记录数
+     * @param scores 分数
+     * @param levels 难度等级
+     * @param times 时间（epoch毫秒）
+     * @param count 记录条数
+     * @return 追加之前文件中的记录数，即第一条新记录的序号
+     */
+    public long append(int[] scores, int[] levels, long[] times, int count) throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            int existing = map.getInt(COUNT_OFFSET);
+            long offset = HEADER_BYTES + (long) existing * RECORD_BYTES;
+            long end = offset + (long) count * RECORD_BYTES;
+            if (end > map.capacity()) {
+                remap(Math.max(channel.size(), end + (long) GROWTH_RECORDS * RECORD_BYTES));
+            }
+            int at = (int) offset;
+            for (int i = 0; i < count; i++) {
+                map.putInt(at, scores[i]);
+                map.putInt(at + 4, levels[i]);
+                map.putLong(at + 8, times[i]);
+                at += RECORD_BYTES;
+            }
+            map.putInt(COUNT_OFFSET, existing + count);   // 最后发布记录数
+            return existing;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * 把第from条之后的记录读入索引（不更新索引，调用方需要调用 reindex）
+     * 难度等级无效的记录被跳过
+     * @param index 目标索引
+     * @param from 起始记录序号
+     * @return 文件中的记录数，即下次读取的起始序号
+     */
+    public long readInto(LeaderboardIndex index, long from) throws IOException {
+        long count = count();
+        mapTo(count);
+        index.ensureCapacity((int) (index.size() + count - from));
+        int levels = DifficultyManager.getLevelCount();
+        for (long i = from; i < count; i++) {
+            int at = (int) (HEADER_BYTES + i * RECORD_BYTES);
+            int level = map.getInt(at + 4);
+            if (level >= 0 && level < levels) {
+                index.append(map.getInt(at), level, map.getLong(at + 8));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 保证前count条记录都在映射范围内，其他进程扩展了文件时重新映射
+     */
+    public void mapTo(long count) throws IOException {
+        if (HEADER_BYTES + count * RECORD_BYTES > map.capacity()) {
+            remap(channel.size());
+        }
+    }
+
+    /**
+     * 依次把 [from, to) 范围内的记录交给consumer（包括难度等级无效的记录）
+     * 只读取映射内存，多个线程可以同时扫描不同的范围；调用前必须用 mapTo 保证范围已经映射
+     * @param from 起始记录序号
+     * @param to 结束记录序号（不包含）
+     * @param consumer 接收记录的回调
+     */
+    public void scan(long from, long to, RecordConsumer consumer) {
+        MappedByteBuffer buffer = map;
+        for (long i = from; i < to; i++) {
+            int at = (int) (HEADER_BYTES + i * RECORD_BYTES);
+            consumer.accept(buffer.getInt(at), buffer.getInt(at + 4), buffer.getLong(at + 8));
+        }
+    }
+
+    /**
+     * 压缩文件：只保留分数不低于minScore的记录，原地改写数据文件，不替换文件
+     * 全程持有文件锁，其他进程的追加要么在压缩之前完成、被保留下来，要么等到压缩之后追加到改写后的末尾
+     * @param minScore 只保留分数不低于此值的记录
+     * @return 保留的记录数
+     */
+    public int compact(int minScore) throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            LeaderboardIndex all = new LeaderboardIndex();
+            readInto(all, 0);
+            int kept = write(pendingPath, all, minScore, generation() + 1);
+            applyPending();
+            return kept;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * 把完整写出的压缩结果复制到数据文件开头，然后删除它；没有压缩结果时什么也不做
+     * 必须持有文件锁。先更换代号并把记录数置0，再复制记录，最后发布记录数；重复执行的结果相同
+     */
+    private void applyPending() throws IOException {
+        if (!Files.exists(pendingPath)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(pendingPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(in, header, 0);
+            int count = header.getInt(COUNT_OFFSET);
+            if (header.getInt(0) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION
+                    || in.size() < HEADER_BYTES + (long) count * RECORD_BYTES) {
+                throw new IOException("压缩结果已损坏: " + pendingPath);
+            }
+            mapTo(count);
+            map.putInt(GENERATION_OFFSET, header.getInt(GENERATION_OFFSET));
+            map.putInt(COUNT_OFFSET, 0);
+            ByteBuffer records = map.duplicate();
+            records.position(HEADER_BYTES).limit(HEADER_BYTES + count * RECORD_BYTES);
+            readFully(in, records, HEADER_BYTES);
+            map.putInt(COUNT_OFFSET, count);
+            map.force();
+        }
+        Files.delete(pendingPath);
+    }
+
+    //从position开始读满buffer
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("文件意外结束");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * 把索引中满足条件的记录按记录号顺序写成新文件
+     * 用 FileChannel.write 写入临时文件（不映射），再原子地改名为目标文件，中途失败不会留下不完整的目标文件。
+     * 目标文件不能正被映射（Windows 上无法覆盖），只用于迁移时的新文件和压缩结果
+     * @param path 目标文件
+     * @param index 记录来源
+     * @param minScore 只保留分数不低于此值的记录
+     * @param generation 写入文件头的代号
+     * @return 写入的记录数
+     */
+    public static int write(Path path, LeaderboardIndex index, int minScore, int generation) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int kept = 0;
+        for (int id = 0; id < index.size(); id++) {
+            if (index.getScore(id) >= minScore) {
+                kept++;
+            }
+        }
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(generation);
+            buffer.putInt(kept);
+            for (int id = 0; id < index.size(); id++) {
+                if (index.getScore(id) >= minScore) {
+                    if (!buffer.hasRemaining()) {
+                        drain(out, buffer);
+                    }
+                    buffer.putInt(index.getScore(id));
+                    buffer.putInt(index.getLevel(id));
+                    buffer.putLong(index.getTime(id));
+                }
+            }
+            drain(out, buffer);
+            out.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return kept;
+    }
+
+    //把缓冲区中的内容全部写出并清空缓冲区
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //重新映射整个文件，size大于文件长度时文件被扩展
+    private void remap(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("排行榜文件过大");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
@@ -0,0 +1,134 @@
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * 排行榜表格模型
+ * 不复制记录内容：只保存当前筛选结果的记录号（int数组，筛选之间重复使用），
+ * 表格绘制可见行时才按记录号从 LeaderboardIndex 的基本类型列中取值，时间也在这时才格式化，
+ * 因此几十万条记录的表格打开和滚动都只处理屏幕上的几十行。
+ *
+ * 筛选结果直接按索引的顺序（分数降序或时间升序）遍历得到，不需要排序；
+ * 切换升序/降序只改变行号到记录号的映射，不重新筛选。
+ * 只在EDT上使用，索引在使用期间不得被其他线程修改。
+ */
+public class LeaderboardTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final int RANK_COLUMN = 0;
+    public static final int SCORE_COLUMN = 1;
+    public static final int DIFFICULTY_COLUMN = 2;
+    public static final int TIME_COLUMN = 3;
+    private static final String[] COLUMNS = {"名次", "分数", "难度", "时间"};
+
+    private LeaderboardIndex index;   // 尚未加载时为null
+    private int[] rows = new int[0];  // 筛选结果的记录号，按索引顺序排列
+    private int rowCount;
+    private String difficulty;        // null表示全部难度
+    private long from = Long.MIN_VALUE;
+    private boolean byTime;           // true按时间排序，false按分数排序
+    private boolean reversed;         // 是否与索引顺序相反
+
+    /**
+     * 设置数据来源并重新筛选
+     * @param index 排行榜索引
+     */
+    public void setIndex(LeaderboardIndex index) {
+        this.index = index;
+        refilter();
+    }
+
+    /**
+     * 设置筛选条件
+     * @param difficulty 难度名称，null表示全部难度
+     * @param from 起始时间（epoch毫秒），Long.MIN_VALUE表示不限
+     */
+    public void setFilter(String difficulty, long from) {
+        this.difficulty = difficulty;
+        this.from = from;
+        refilter();
+    }
+
+    /**
+     * 设置排序方式
+     * 排序字段不变时只切换方向，不重新筛选
+     * @param byTime true按时间排序，false按分数排序
+     * @param descending 是否降序
+     */
+    public void setSort(boolean byTime, boolean descending) {
+        // 索引中分数是降序，时间是升序
+        boolean reverse = byTime == descending;
+        if (byTime == this.byTime) {
+            if (reverse != reversed) {
+                reversed = reverse;
+                fireTableDataChanged();
+            }
+            return;
+        }
+        this.byTime = byTime;
+        this.reversed = reverse;
+        refilter();
+    }
+
+    //是否按时间排序
+    public boolean isSortedByTime() {
+        return byTime;
+    }
+
+    //当前是否为降序
+    public boolean isDescending() {
+        return byTime == reversed;
+    }
+
+    /**
+     * 获取某一行的记录号
+     * @param row 表格行号
+     */
+    public int idAt(int row) {
+        return rows[reversed ? rowCount - 1 - row : row];
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == RANK_COLUMN || column == SCORE_COLUMN ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int id = idAt(row);
+        switch (column) {
+            case RANK_COLUMN:
+                return index.rankOf(difficulty, index.getScore(id));
+            case SCORE_COLUMN:
+                return index.getScore(id);
+            case DIFFICULTY_COLUMN:
+                return index.getDifficulty(id);
+            default:
+                return index.formatTime(id);
+        }
+    }
+
+    //按当前条件重新计算筛选结果，记录号数组只在记录数增加时扩大
+    private void refilter() {
+        if (index == null) {
+            return;
+        }
+        if (rows.length < index.size()) {
+            rows = new int[index.size()];
+        }
+        rowCount = index.select(difficulty, LeaderboardManager.MIN_SCORE + 1, from, Long.MAX_VALUE, byTime, rows);
+        fireTableDataChanged();
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GameServer 的压力测试客户端
+ * 同时打开多个会话，每个会话在自己的虚拟线程上不停发送随机操作：
+ * 大多数是落点命令 P，夹杂单步移动、旋转和状态查询，游戏结束后用新种子重新开始。
+ * 结束时报告会话数、每秒命令数、命令往返延迟的 p50/p99/最大值，以及服务器在测试期间每秒执行的重力下落次数。
+ *
+ * 延迟按10微秒一格记录在所有会话共享的直方图中，超过 MAX_LATENCY_MICROS 的计入最后一格。
+ *
+ * 用法：java LoadClient [会话数] [秒数] [主机] [端口]
+ * 不指定主机时在本进程内启动一个加速10倍重力的服务器，单独运行一条命令即可完成测试。
+ */
+public class LoadClient {
+    private static final int BUCKET_MICROS = 10;                // 直方图每格宽度
+    private static final int MAX_LATENCY_MICROS = 1_000_000;    // 直方图范围：1秒
+    private static final int EMBEDDED_GRAVITY_SCALE = 10;       // 内置服务器的重力加速倍数
+
+    private final AtomicLongArray histogram = new AtomicLongArray(MAX_LATENCY_MICROS / BUCKET_MICROS + 1);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long maxNanos;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String host = args.length > 2 ? args[2] : null;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+
+        GameServer embedded = null;
+        if (host == null) {
+            embedded = new GameServer(0, EMBEDDED_GRAVITY_SCALE);
+            GameServer server = embedded;
+            Thread acceptor = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    System.err.println("服务器异常: " + e.getMessage());
+                }
+            }, "server-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            host = "localhost";
+            port = server.getPort();
+        }
+        System.out.printf("连接 %s:%d，会话 %d，持续 %d 秒%n", host, port, sessions, seconds);
+        new LoadClient().run(host, port, sessions, seconds);
+        if (embedded != null) {
+            embedded.close();
+        }
+    }
+
+    private void run(String host, int port, int sessions, int seconds) throws Exception {
+        long ticksBefore = queryTicks(host, port);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        CountDownLatch connected = new CountDownLatch(sessions);
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        for (int i = 0; i < sessions; i++) {
+            long seed = i;
+            executor.execute(() -> playSession(host, port, seed, deadline, connected));
+        }
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            // 等待所有会话结束
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long ticksAfter = queryTicks(host, port);
+
+        long total = requests.sum();
+        System.out.printf("会话: %d（失败 %d）  对局: %d  耗时: %.2f s%n", sessions, failures.sum(), games.sum(), elapsed);
+        System.out.printf("命令: %d  (%.0f 条/秒)%n", total, total / elapsed);
+        System.out.printf("延迟: p50 %.0f µs  p99 %.0f µs  最大 %.0f µs%n",
+            percentile(0.50), percentile(0.99), maxNanos / 1e3);
+        System.out.printf("服务器重力下落: %.0f 次/秒%n", (ticksAfter - ticksBefore) / elapsed);
+    }
+
+    /**
+     * 一个会话：连接后不停发送随机命令直到截止时间
+     */
+    private void playSession(String host, int port, long seed, long deadline, CountDownLatch connected) {
+        Random random = new Random(seed);
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            connected.countDown();
+            connected.await();      // 所有会话都连上后再开始发送命令
+            call(in, out, "N " + seed);
+            games.increment();
+            while (System.nanoTime() < deadline) {
+                String reply = call(in, out, randomCommand(random));
+                if (reply == null) {
+                    failures.increment();
+                    return;
+                }
+                if (reply.startsWith("OVER")) {
+                    call(in, out, "N " + random.nextLong());
+                    games.increment();
+                }
+            }
+            out.write("Q\n");
+            out.flush();
+        } catch (IOException e) {
+            failures.increment();
+            connected.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String randomCommand(Random random) {
+        int r = random.nextInt(10);
+        if (r < 5) {
+            return "P " + random.nextInt(4) + " " + random.nextInt(10);
+        }
+        switch (r) {
+            case 5:
+                return "L";
+            case 6:
+                return "R";
+            case 7:
+                return "U";
+            case 8:
+                return "D";
+            default:
+                return "S";
+        }
+    }
+
+    //发送一条命令并等待回复，记录往返延迟
+    private String call(BufferedReader in, Writer out, String command) throws IOException {
+        long start = System.nanoTime();
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        long nanos = System.nanoTime() - start;
+        histogram.incrementAndGet((int) Math.min(nanos / 1000 / BUCKET_MICROS, histogram.length() - 1));
+        if (nanos > maxNanos) {
+            maxNanos = nanos;   // 并发更新可能丢失个别最大值，仅用于报告
+        }
+        requests.increment();
+        return reply;
+    }
+
+    //直方图中的百分位数（微秒，取所在格的上界）
+    private double percentile(double p) {
+        long count = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            count += histogram.get(i);
+        }
+        long target = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= target && seen > 0) {
+                return (i + 1) * BUCKET_MICROS;
+            }
+        }
+        return 0;
+    }
+
+    //向服务器查询重力下落总数
+    private static long queryTicks(String host, int port) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.write("T\nQ\n");
+            out.flush();
+            String[] parts = in.readLine().split(" ");
+            return Long.parseLong(parts[2]);
+        }
+    }
+}
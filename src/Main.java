@@ -10,8 +10,25 @@ import java.awt.*;
 public class Main {
     public static void main(String[] args) {
 
+        // 发布JMX运行时指标
+        Metrics.register();
+        
+        // 在后台加载最高分和排行榜索引，之后重新开始、查看排行榜和游戏结束时都直接使用内存中的结果
+        ScoreService.shared();
+        
+        // 在主线程上读取上次被中断的对局，不在EDT上读文件
+        GameEngine unfinished = TetrisGame.recoverSession();
+        
         // 使用SwingUtilities.invokeLater确保在EDT线程中创建和显示GUI
         SwingUtilities.invokeLater(() -> {
+            // 询问是否继续上次的对局，不继续时新游戏会覆盖保存的对局
+            GameEngine resumed = null;
+            if (unfinished != null && JOptionPane.showConfirmDialog(null,
+                    "上次的对局没有结束（分数 " + unfinished.getScoreManager().getScore() + "），是否继续？",
+                    "继续游戏", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                resumed = unfinished;
+            }
+            
             // 创建游戏主窗口
             JFrame frame = new JFrame("俄罗斯方块");        //创建游戏主窗口
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);//设置关闭操作
@@ -22,7 +39,7 @@ public class Main {
             mainPanel.setBackground(Color.WHITE);                //设置主面板背景颜色为白色
             
             // 创建游戏面板（左侧）
-            TetrisGame game = new TetrisGame();                //创建游戏面板
+            TetrisGame game = new TetrisGame(resumed);         //创建游戏面板
             mainPanel.add(game, BorderLayout.CENTER);          //将游戏面板添加到主面板的中心
             
             // 创建右侧控制面板
@@ -38,6 +55,8 @@ public class Main {
             JLabel scoreLabel = new JLabel("分数: 0");         //创建分数显示标签
             JLabel highScoreLabel = new JLabel("最高分: 0");   //创建最高分显示标签
             JLabel difficultyLabel = new JLabel("难度: 简单");  //创建难度显示标签
+            JLabel jitterLabel = new JLabel("抖动: -");       //创建节拍抖动显示标签
+            JLabel latencyLabel = new JLabel("输入延迟: -");   //创建输入延迟显示标签
             
             // 设置标签字体
             Font labelFont = new Font("微软雅黑", Font.BOLD, 16);
@@ -57,6 +76,23 @@ public class Main {
             sidePanel.add(Box.createVerticalStrut(15));
             sidePanel.add(difficultyLabel);
             sidePanel.add(Box.createVerticalStrut(15));
+            // 添加下一个方块预览
+            JPanel previewPanel = game.createPreviewPanel();
+            if (previewPanel != null) {
+                JLabel nextLabel = new JLabel("下一个:");
+                nextLabel.setFont(new Font("微软雅黑", Font.PLAIN, 12));
+                sidePanel.add(nextLabel);
+                sidePanel.add(Box.createVerticalStrut(5));
+                sidePanel.add(previewPanel);
+                sidePanel.add(Box.createVerticalStrut(15));
+            }
+            jitterLabel.setFont(new Font("微软雅黑", Font.PLAIN, 12));
+            jitterLabel.setForeground(Color.GRAY);
+            sidePanel.add(jitterLabel);
+            latencyLabel.setFont(jitterLabel.getFont());
+            latencyLabel.setForeground(Color.GRAY);
+            sidePanel.add(latencyLabel);
+            sidePanel.add(Box.createVerticalStrut(15));
             // 添加操作说明
             JLabel helpLabel = new JLabel(
                 "<html><body>"
@@ -64,7 +100,10 @@ public class Main {
                 + "↑：旋转<br>"
                 + "↓：加速下落<br>"
                 + "←→：左右移动<br>"
-                + "空格：快速下落"
+                + "空格：快速下落<br>"
+                + "A：自动演示<br>"
+                + "Z：撤销<br>"
+                + "F：性能信息"
                 + "</body></html>"
             );
             Font helpFont = new Font("微软雅黑", Font.PLAIN, 12);
@@ -84,12 +123,22 @@ public class Main {
             sidePanel.add(game.createCenteredPanel(game.exitButton));
             sidePanel.add(Box.createVerticalStrut(5));
             sidePanel.add(game.createCenteredPanel(game.leaderboardButton));
+            sidePanel.add(Box.createVerticalStrut(5));
+            sidePanel.add(game.createCenteredPanel(game.autoPlayButton));
+            sidePanel.add(Box.createVerticalStrut(5));
+            sidePanel.add(game.createCenteredPanel(game.practiceButton));
+            sidePanel.add(Box.createVerticalStrut(5));
+            sidePanel.add(game.createCenteredPanel(game.spectatorButton));
             
             // 创建定时器，每100毫秒更新一次分数显示
             Timer updateTimer = new Timer(100, e -> {
                 scoreLabel.setText("分数: " + game.getScore());
                 highScoreLabel.setText("最高分: " + game.getHighScore());
                 difficultyLabel.setText("难度: " + game.getDifficulty());
+                GameLoop.TickStats stats = game.getTickStats();
+                jitterLabel.setText(String.format("抖动: %.2f/%.2fms", stats.meanLateMicros / 1000, stats.maxLateMicros / 1000));
+                jitterLabel.setToolTipText(stats.toString());
+                latencyLabel.setText("输入延迟: " + game.getInputLatency());
             });
             updateTimer.start();
             
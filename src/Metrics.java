@@ -0,0 +1,231 @@
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 运行时指标登记表
+ * 计数器使用 LongAdder，直方图使用 Histogram，记录都是无锁的，也不分配对象，
+ * 可以直接放在绘制和游戏循环节拍这类热点路径上。
+ * 所有指标是全局静态的，register 把它们作为 MXBean 发布到平台 MBeanServer。
+ */
+public final class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "tetris:type=Metrics";
+
+    public static final LongAdder PIECES_LOCKED = new LongAdder();
+    public static final LongAdder LINES_CLEARED = new LongAdder();
+    public static final LongAdder FRAMES_PAINTED = new LongAdder();
+    public static final Histogram FRAME_PAINT = new Histogram();         // paintComponent 耗时（纳秒）
+    public static final Histogram TICK_JITTER = new Histogram();         // 节拍延迟（纳秒）
+    public static final Histogram INPUT_LATENCY = new Histogram();       // 按键到画面变化（纳秒）
+    public static final Histogram PERSISTENCE_FLUSH = new Histogram();   // 持久化每批耗时（纳秒）
+
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     * 把指标注册为MXBean，重复调用只注册一次；注册失败只打印警告，不影响游戏
+     */
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            System.err.println("无法注册JMX指标: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getPiecesLocked() {
+        return PIECES_LOCKED.sum();
+    }
+
+    @Override
+    public long getLinesCleared() {
+        return LINES_CLEARED.sum();
+    }
+
+    @Override
+    public long getFramesPainted() {
+        return FRAMES_PAINTED.sum();
+    }
+
+    @Override
+    public Summary getFramePaint() {
+        return FRAME_PAINT.summary();
+    }
+
+    @Override
+    public Summary getTickJitter() {
+        return TICK_JITTER.summary();
+    }
+
+    @Override
+    public Summary getInputLatency() {
+        return INPUT_LATENCY.summary();
+    }
+
+    @Override
+    public Summary getPersistenceFlush() {
+        return PERSISTENCE_FLUSH.summary();
+    }
+
+    /**
+     * 对数线性分桶的直方图（与HdrHistogram相同的思路）
+     * 小于64的值每个值一个桶；更大的值按最高位分组，每组再按其后5位分为32个桶，
+     * 相对误差不超过1/32，覆盖 0 到 Long.MAX_VALUE 只需1888个桶。
+     * 记录是一次数组下标计算加若干次原子加，不加锁、不分配对象。
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;        // 每组的桶数
+        private static final int LINEAR = SUB_COUNT * 2;           // 直接按值分桶的范围
+        private static final int BUCKETS = LINEAR + (63 - (SUB_BITS + 1)) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * 记录一个值，负值按0记录
+         */
+        public void record(long value) {
+            long v = Math.max(0, value);
+            counts.incrementAndGet(bucketOf(v));
+            count.increment();
+            sum.add(v);
+            long current;
+            while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+                // 其他线程同时更新了最大值，重试
+            }
+        }
+
+        //已记录的值个数
+        public long getCount() {
+            return count.sum();
+        }
+
+        //已记录的最大值
+        public long getMax() {
+            return max.get();
+        }
+
+        //已记录值的平均值
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        /**
+         * 百分位数，返回所在桶的上界（误差不超过1/32）
+         * 记录同时进行时结果是近似值
+         * @param p 0到1之间的比例，例如0.99
+         */
+        public long percentile(double p) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(total * p));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        //生成供JMX和界面使用的摘要（单位：微秒）
+        public Summary summary() {
+            return new Summary(getCount(), getMean() / 1e3, percentile(0.50) / 1e3,
+                percentile(0.99) / 1e3, percentile(0.999) / 1e3, getMax() / 1e3);
+        }
+
+        static int bucketOf(long v) {
+            if (v < LINEAR) {
+                return (int) v;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(v);     // 最高位，至少为 SUB_BITS + 1
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+            return LINEAR + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+        }
+
+        //桶中最大的值
+        static long upperBound(int bucket) {
+            if (bucket < LINEAR) {
+                return bucket;
+            }
+            int exp = (bucket - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+            long sub = (bucket - LINEAR) % SUB_COUNT;
+            long lower = (SUB_COUNT + sub) << (exp - SUB_BITS);
+            return lower + (1L << (exp - SUB_BITS)) - 1;
+        }
+    }
+
+    /**
+     * 直方图摘要（不可变，单位：微秒）
+     * 作为MXBean属性时映射为CompositeData
+     */
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+        public Summary(long count, double mean, double p50, double p99, double p999, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getP999() {
+            return p999;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d 平均 %.1fµs p50 %.1fµs p99 %.1fµs p99.9 %.1fµs 最大 %.1fµs",
+                count, mean, p50, p99, p999, max);
+        }
+    }
+}
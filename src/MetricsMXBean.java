@@ -0,0 +1,27 @@
+/**
+ * 运行时指标的JMX接口
+ * 由 Metrics 实现并注册为 tetris:type=Metrics，可在 JConsole / VisualVM 中查看。
+ * 直方图以 Metrics.Summary 的形式（JMX中为CompositeData）返回，单位为微秒。
+ */
+public interface MetricsMXBean {
+    //已固定的方块数
+    long getPiecesLocked();
+
+    //已消除的总行数
+    long getLinesCleared();
+
+    //已绘制的帧数
+    long getFramesPainted();
+
+    //每帧 paintComponent 的耗时
+    Metrics.Summary getFramePaint();
+
+    //游戏循环节拍实际开始时间比预定时间晚了多少
+    Metrics.Summary getTickJitter();
+
+    //从按键到画面变化的延迟
+    Metrics.Summary getInputLatency();
+
+    //后台持久化每批写出的耗时
+    Metrics.Summary getPersistenceFlush();
+}
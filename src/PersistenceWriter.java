@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 后台持久化写入器
+ * 把文件写入从调用线程（通常是EDT）移到独立的后台线程，调用方只把内容放入队列即可返回。
+ *
+ * 两类写入：
+ * replace 整体替换一个文件的内容，同一文件尚未写出的旧内容直接被新内容覆盖（合并），
+ * 写出时先写临时文件并强制落盘，再原子改名，文件不会处于写了一半的状态；
+ * execute 提交按顺序执行的写入任务，调用方自己在任务中批量处理积累的数据（例如排行榜记录）。
+ *
+ * 后台线程被唤醒后先等待 BATCH_DELAY_NANOS 让更多写入进入队列，再一次性写出；
+ * 进程退出时关闭钩子会写出所有剩余内容。
+ */
+public class PersistenceWriter {
+    private static final long BATCH_DELAY_NANOS = 20_000_000L;   // 合并写入的等待时间：20毫秒
+
+    private static PersistenceWriter shared;
+
+    /**
+     * 写入统计（不可变）
+     */
+    public static final class Stats {
+        public final int queueDepth;          // 尚未写出的文件和任务数
+        public final long flushes;            // 已完成的批次数
+        public final long written;            // 已写出的文件和任务数
+        public final long coalesced;          // 被后来的内容覆盖而省掉的写入数
+        public final double lastFlushMillis;  // 最近一批的耗时
+        public final double maxFlushMillis;   // 最长一批的耗时
+
+        Stats(int queueDepth, long flushes, long written, long coalesced, double lastFlushMillis, double maxFlushMillis) {
+            this.queueDepth = queueDepth;
+            this.flushes = flushes;
+            this.written = written;
+            this.coalesced = coalesced;
+            this.lastFlushMillis = lastFlushMillis;
+            this.maxFlushMillis = maxFlushMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("队列 %d  批次 %d  写出 %d  合并 %d  最近 %.1fms  最长 %.1fms",
+                queueDepth, flushes, written, coalesced, lastFlushMillis, maxFlushMillis);
+        }
+    }
+
+    private final Map<Path, byte[]> pendingFiles = new ConcurrentHashMap<>();   // 每个文件最新的待写内容
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final Object flushLock = new Object();   // 后台线程和关闭钩子不会同时写出
+    private final Thread thread;
+
+    // 统计
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    private PersistenceWriter() {
+        thread = new Thread(this::run, "persistence-writer");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * 获取全局共享的写入器，第一次调用时启动后台线程并注册关闭钩子
+     */
+    public static synchronized PersistenceWriter shared() {
+        if (shared == null) {
+            PersistenceWriter writer = new PersistenceWriter();
+            writer.thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(writer::flush, "persistence-flush"));
+            shared = writer;
+        }
+        return shared;
+    }
+
+    /**
+     * 用新内容整体替换文件，尚未写出的旧内容被覆盖
+     * @param path 文件路径
+     * @param content 新内容，调用后不得修改
+     */
+    public void replace(Path path, byte[] content) {
+        if (pendingFiles.put(path, content) != null) {
+            coalesced.incrementAndGet();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 提交一个在后台线程上按提交顺序执行的写入任务
+     * @param task 写入任务，异常由任务自己处理
+     */
+    public void execute(Runnable task) {
+        queuedTasks.incrementAndGet();
+        tasks.add(task);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 读取文件内容；该文件有尚未写出的新内容时返回新内容
+     * @param path 文件路径
+     * @return 文件内容，文件不存在且没有待写内容时返回null
+     */
+    public byte[] read(Path path) throws IOException {
+        byte[] pending = pendingFiles.get(path);
+        if (pending != null) {
+            return pending;
+        }
+        return Files.exists(path) ? Files.readAllBytes(path) : null;
+    }
+
+    /**
+     * 在当前线程上立即写出所有待写内容
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (getQueueDepth() == 0) {
+                return;
+            }
+            long start = System.nanoTime();
+            long count = 0;
+            for (Map.Entry<Path, byte[]> entry : pendingFiles.entrySet()) {
+                Path path = entry.getKey();
+                byte[] content = entry.getValue();
+                try {
+                    writeAtomically(path, content);
+                } catch (IOException e) {
+                    System.err.println("无法写入 " + path + ": " + e.getMessage());
+                }
+                // 写出期间又有新内容时保留新内容，留到下一批
+                pendingFiles.remove(path, content);
+                count++;
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("持久化任务失败: " + e);
+                }
+                queuedTasks.decrementAndGet();
+                count++;
+            }
+            long elapsed = System.nanoTime() - start;
+            Metrics.PERSISTENCE_FLUSH.record(elapsed);
+            lastFlushNanos = elapsed;
+            maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+            written.addAndGet(count);
+            flushes.incrementAndGet();
+        }
+    }
+
+    //尚未写出的文件和任务数
+    public int getQueueDepth() {
+        return pendingFiles.size() + queuedTasks.get();
+    }
+
+    //获取写入统计
+    public Stats getStats() {
+        return new Stats(getQueueDepth(), flushes.get(), written.get(), coalesced.get(),
+            lastFlushNanos / 1e6, maxFlushNanos / 1e6);
+    }
+
+    private void run() {
+        while (true) {
+            if (getQueueDepth() == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            // 等待一小段时间，让紧接着的写入合并到同一批
+            long deadline = System.nanoTime() + BATCH_DELAY_NANOS;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 先写临时文件并强制落盘，再原子地改名为目标文件
+     * 包内可见，供在写入任务中自行管理文件的调用方（如 SessionJournal）使用
+     */
+    static void writeAtomically(Path path, byte[] content) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
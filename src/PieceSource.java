@@ -0,0 +1,30 @@
+/**
+ * 方块序列来源
+ * GameBoard 从这里取得每个新方块的类型，并可以查看之后的若干个方块，用于预览和自动演示预判。
+ * 不同的随机规则（7袋、纯随机、固定序列等）只需实现本接口，游戏区域本身不关心方块如何产生。
+ * 实现不要求线程安全，只在拥有游戏区域的线程上使用。
+ */
+public interface PieceSource {
+    /**
+     * 取出下一个方块类型
+     * @return 方块类型（0-6）
+     */
+    int next();
+
+    /**
+     * 查看之后的方块类型，不取出
+     * @param ahead 0表示下一次 next 返回的方块，1表示再下一个，依此类推
+     * @return 方块类型（0-6）
+     * @throws IllegalArgumentException ahead 超出 getPreviewLimit
+     */
+    int peek(int ahead);
+
+    //peek 支持查看的方块个数
+    int getPreviewLimit();
+
+    /**
+     * 复制当前状态，用于局面快照
+     * @return 之后产生的序列与本对象完全相同的独立副本
+     */
+    PieceSource copy();
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 录像回放器
+ * 读取 ReplayRecorder 生成的录像，用相同的种子创建无界面引擎，忽略时间间隔，以最快速度依次执行所有事件，
+ * 然后把得到的分数、难度和局面哈希与录像中记录的结果比较。
+ * 用于核对排行榜成绩是否真实，以及在本地重现线上的问题。
+ * Playback 可以逐个事件推进，供观战墙（SpectatorWall）按录像中的时间间隔实时播放。
+ *
+ * 用法：java ReplayPlayer 录像文件...
+ */
+public class ReplayPlayer {
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+    /**
+     * 回放结果
+     */
+    public static final class Result {
+        public final GameEngine engine;       // 回放结束后的引擎
+        public final int events;              // 执行的事件数
+        public final long durationMillis;     // 原始对局的时长（事件间隔之和）
+        public final int expectedScore;       // 录像记录的分数
+        public final int expectedLevel;       // 录像记录的难度等级
+        public final long expectedHash;       // 录像记录的局面哈希
+
+        Result(GameEngine engine, int events, long durationMillis, int expectedScore, int expectedLevel, long expectedHash) {
+            this.engine = engine;
+            this.events = events;
+            this.durationMillis = durationMillis;
+            this.expectedScore = expectedScore;
+            this.expectedLevel = expectedLevel;
+            this.expectedHash = expectedHash;
+        }
+
+        //回放得到的分数、难度和局面是否都与录像记录一致
+        public boolean matches() {
+            return engine.getScoreManager().getScore() == expectedScore
+                && engine.getDifficultyManager().getLevelIndex() == expectedLevel
+                && engine.getGameBoard().contentHash() == expectedHash;
+        }
+    }
+
+    /**
+     * 逐个事件的回放过程
+     * 按录像中的时间间隔推进对局（例如观战墙实时播放录像）时使用，replay 也用它一次执行完所有事件
+     */
+    public static final class Playback {
+        private final byte[] data;
+        private final GameEngine engine;
+        private final int eventCount;
+        private final int expectedScore;
+        private final int expectedLevel;
+        private final long expectedHash;
+        private int pos;            // 下一个事件在data中的位置
+        private int index;          // 已执行的事件数
+        private int pendingCode = -1;   // 已解码但尚未执行的事件，-1表示没有
+        private long pendingDelay;      // 该事件距上一事件的毫秒数
+
+        /**
+         * 读取录像头，创建回放用的引擎
+         * @param data 录像文件内容
+         * @throws IllegalArgumentException 不是有效的录像
+         */
+        public Playback(byte[] data) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            try {
+                if (buffer.getInt() != ReplayRecorder.MAGIC || buffer.get() != ReplayRecorder.VERSION) {
+                    throw new IllegalArgumentException("不是有效的录像文件");
+                }
+                int width = buffer.getShort();
+                int height = buffer.getShort();
+                long seed = buffer.getLong();
+                this.eventCount = buffer.getInt();
+                this.expectedScore = buffer.getInt();
+                this.expectedLevel = buffer.get();
+                this.expectedHash = buffer.getLong();
+                this.engine = new GameEngine(width, height, seed);
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("录像文件不完整", e);
+            }
+            this.data = data;
+            this.pos = buffer.position();
+        }
+
+        public GameEngine getEngine() {
+            return engine;
+        }
+
+        //是否还有未执行的事件
+        public boolean hasNext() {
+            return index < eventCount;
+        }
+
+        /**
+         * 下一个事件距上一事件的毫秒数
+         * @throws IllegalArgumentException 录像文件不完整
+         */
+        public long nextDelay() {
+            decode();
+            return pendingDelay;
+        }
+
+        /**
+         * 执行下一个事件
+         * @throws IllegalArgumentException 录像文件不完整
+         */
+        public void applyNext() {
+            decode();
+            apply(engine, pendingCode);
+            pendingCode = -1;
+            index++;
+        }
+
+        //解码下一个事件的时间间隔和操作码，已解码时不做任何事
+        private void decode() {
+            if (pendingCode >= 0) {
+                return;
+            }
+            if (index >= eventCount) {
+                throw new IllegalStateException("录像已经播放完毕");
+            }
+            try {
+                int first = data[pos++] & 0xFF;
+                long delta = (first >>> 3) & 0xF;
+                int shift = 4;
+                boolean more = (first & 0x80) != 0;
+                while (more) {
+                    int b = data[pos++] & 0xFF;
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                    more = (b & 0x80) != 0;
+                }
+                pendingDelay = delta;
+                pendingCode = first & 0x7;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("录像文件不完整", e);
+            }
+        }
+    }
+
+    /**
+     * 回放一段录像
+     * @param data 录像文件内容
+     * @return 回放结果
+     * @throws IllegalArgumentException 不是有效的录像
+     */
+    public static Result replay(byte[] data) {
+        Playback playback = new Playback(data);
+        long duration = 0;
+        while (playback.hasNext()) {
+            duration += playback.nextDelay();
+            playback.applyNext();
+        }
+        return new Result(playback.engine, playback.eventCount, duration,
+            playback.expectedScore, playback.expectedLevel, playback.expectedHash);
+    }
+
+    private static void apply(GameEngine engine, int code) {
+        switch (code) {
+            case ReplayRecorder.GRAVITY:
+                engine.step();
+                break;
+            case ReplayRecorder.DIFFICULTY_UP:
+                engine.increaseDifficulty();
+                break;
+            case ReplayRecorder.DIFFICULTY_DOWN:
+                engine.decreaseDifficulty();
+                break;
+            default:
+                engine.apply(ACTIONS[code]);
+                break;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("用法：java ReplayPlayer 录像文件...");
+            return;
+        }
+        int failed = 0;
+        for (String file : args) {
+            byte[] data = Files.readAllBytes(Paths.get(file));
+            long start = System.nanoTime();
+            Result result;
+            try {
+                result = replay(data);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%s: %s%n", file, e.getMessage());
+                failed++;
+                continue;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            GameEngine engine = result.engine;
+            System.out.printf("%s: %s  分数 %d（记录 %d）  方块 %d  事件 %d  原时长 %.1f s  回放 %.1f ms（%.0f 事件/秒）%n",
+                file, result.matches() ? "一致" : "不一致",
+                engine.getScoreManager().getScore(), result.expectedScore, engine.getPiecesLocked(),
+                result.events, result.durationMillis / 1e3, seconds * 1e3, result.events / seconds);
+            if (!result.matches()) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
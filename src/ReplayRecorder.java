@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 录像记录器
+ * 记录一局游戏的方块序列种子和引擎实际执行的每一个事件（成功的玩家操作、重力下落、手动调整难度），
+ * 配合 ReplayPlayer 可以在无界面环境中完全重现这局游戏。
+ *
+ * 事件流为紧凑的二进制编码，每个事件的第一个字节：
+ * <pre>
+ * 位0-2：事件代码（0-4 为 GameEngine.Action 序号，5 重力下落，6 提高难度，7 降低难度）
+ * 位3-6：距上一个事件的毫秒数的低4位
+ * 位7：  后面是否还有字节
+ * </pre>
+ * 剩余的毫秒数按每字节7位、低位在前继续编码，因此间隔小于16毫秒的事件只占1字节，1秒左右的占3字节。
+ *
+ * 完成时输出的录像文件：
+ * <pre>
+ * int 魔数 | byte 版本 | short 宽度 | short 高度 | long 种子 |
+ * int 事件数 | int 最终分数 | byte 最终难度 | long 最终局面哈希 | 事件流
+ * </pre>
+ * 记录器只在拥有引擎的线程上使用。
+ */
+public class ReplayRecorder {
+    static final int MAGIC = 0x5452504C;        // "TRPL"
+    static final int VERSION = 2;               // 版本2：方块序列改为7袋随机
+    static final int HEADER_BYTES = 4 + 1 + 2 + 2 + 8 + 4 + 4 + 1 + 8;
+    static final int GRAVITY = 5;               // 重力下落
+    static final int DIFFICULTY_UP = 6;         // 手动提高难度
+    static final int DIFFICULTY_DOWN = 7;       // 手动降低难度
+
+    private final int width;
+    private final int height;
+    private final long seed;
+    private byte[] events = new byte[1024];
+    private int length;
+    private int eventCount;
+    private long lastNanos;
+
+    /**
+     * 构造函数
+     * @param width 游戏区域宽度
+     * @param height 游戏区域高度
+     * @param seed 方块序列的随机种子
+     */
+    public ReplayRecorder(int width, int height, long seed) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.lastNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录一个事件，时间取当前时刻
+     * @param code 事件代码（0-7）
+     */
+    public void record(int code) {
+        long now = System.nanoTime();
+        long delta = Math.max(0, (now - lastNanos) / 1_000_000L);
+        lastNanos += delta * 1_000_000L;    // 只前进整毫秒，舍去的部分计入下一个间隔
+        if (length + 10 > events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+        int first = code | (int) (delta & 0xF) << 3;
+        delta >>>= 4;
+        if (delta != 0) {
+            first |= 0x80;
+        }
+        events[length++] = (byte) first;
+        while (delta != 0) {
+            int b = (int) (delta & 0x7F);
+            delta >>>= 7;
+            events[length++] = (byte) (delta != 0 ? b | 0x80 : b);
+        }
+        eventCount++;
+    }
+
+    //已记录的事件数
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * 生成录像文件内容，附带这局游戏的最终结果供回放核对
+     * @param engine 被记录的引擎
+     * @return 录像文件内容
+     */
+    public byte[] finish(GameEngine engine) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putLong(seed);
+        buffer.putInt(eventCount);
+        buffer.putInt(engine.getScoreManager().getScore());
+        buffer.put((byte) engine.getDifficultyManager().getLevelIndex());
+        buffer.putLong(engine.getGameBoard().contentHash());
+        buffer.put(events, 0, length);
+        return buffer.array();
+    }
+}
@@ -1,22 +1,32 @@
-import java.io.*;
-import java.nio.file.*;
-
 /**
  * 分数管理器类
  * 负责处理游戏分数的计算、记录和保存
+ * 历史最高分来自共享的 ScoreService，构造时不读取文件
  */
 public class ScoreManager {
-    private static final String HIGH_SCORE_FILE = "highscore.txt";  // 最高分保存文件
+    private final ScoreService service;   // 共享的分数服务，无界面的模拟对局为null
     private int score;         // 当前游戏分数
-    private int highScore;     // 历史最高分
+    private int highScore;     // 本局开始时给定的最高分与本局分数中的较大者
     
     /**
      * 构造函数
-     * 初始化分数并加载历史最高分
+     * 历史最高分由 ScoreService 在后台加载，加载完成之前 getHighScore 只反映本次运行中的分数
      */
     public ScoreManager() {
+        this.service = ScoreService.shared();
         this.score = 0;
-        this.highScore = loadHighScore();
+        this.highScore = 0;
+    }
+    
+    /**
+     * 构造函数
+     * 使用给定的历史最高分，不读取也不保存文件，用于无界面的模拟对局
+     * @param highScore 历史最高分
+     */
+    public ScoreManager(int highScore) {
+        this.service = null;
+        this.score = 0;
+        this.highScore = highScore;
     }
     
     /**
@@ -47,32 +57,21 @@ public class ScoreManager {
     }
     
     /**
-     * 保存最高分到文件
-     * 如果保存失败会在控制台输出错误信息
+     * 直接设置当前分数，用于恢复局面快照（撤销、练习分支）；历史最高分不会降低
+     * @param score 分数
      */
-    public void saveHighScore() {
-        try {
-            Files.writeString(Paths.get(HIGH_SCORE_FILE), String.valueOf(highScore));
-        } catch (IOException e) {
-            System.err.println("无法保存最高分: " + e.getMessage());
-        }
+    void setScore(int score) {
+        this.score = score;
     }
     
     /**
-     * 从文件加载最高分
-     * 如果文件不存在或读取失败，返回0
-     * @return 历史最高分
+     * 保存最高分
+     * 交给 ScoreService 更新共享的最高分并在后台写入文件，不阻塞调用线程
      */
-    private int loadHighScore() {
-        try {
-            if (Files.exists(Paths.get(HIGH_SCORE_FILE))) {
-                String content = Files.readString(Paths.get(HIGH_SCORE_FILE));
-                return Integer.parseInt(content.trim());
-            }
-        } catch (IOException | NumberFormatException e) {
-            System.err.println("无法加载最高分: " + e.getMessage());
+    public void saveHighScore() {
+        if (service != null) {
+            service.saveHighScore(highScore);
         }
-        return 0;
     }
     
     /**
@@ -88,6 +87,6 @@ public class ScoreManager {
      * @return 最高分
      */
     public int getHighScore() {
-        return highScore;
+        return service != null ? Math.max(highScore, service.getHighScore()) : highScore;
     }
 } 
\ No newline at end of file
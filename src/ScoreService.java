@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分数服务
+ * 整个程序共享一个实例，集中管理历史最高分和排行榜，代替每次新建 ScoreManager、LeaderboardManager 时读文件。
+ *
+ * 第一次调用 shared（Main 在创建界面之前调用）时在后台线程上读取 highscore.txt，并预先加载排行榜索引，
+ * 之后最高分、排名查询都直接使用内存中的结果：重新开始游戏、打开排行榜和游戏结束时都不在EDT上读文件，
+ * 游戏结束时的排名也总是可用（只有在启动后加载完成之前结束的对局没有排名）。
+ *
+ * 所有文件操作在同一个后台线程上按提交顺序执行：保存最高分排在加载之后，不会用较低的分数覆盖尚未读到的记录；
+ * 保存排行榜记录之后在同一线程上刷新索引，下一局的排名包含本局的成绩。
+ */
+public final class ScoreService {
+    private static final String HIGH_SCORE_FILE = "highscore.txt";  // 最高分保存文件
+
+    private static ScoreService shared;
+
+    private final ExecutorService worker;        // 执行所有文件读写的后台线程
+    private final LeaderboardManager leaderboard = new LeaderboardManager();
+    private final AtomicInteger highScore = new AtomicInteger();    // 已知的历史最高分（文件中的与本次运行中保存的较大者）
+    private volatile boolean loaded;             // 最高分和排行榜索引是否已经加载
+    private int savedHighScore;                  // 文件中的最高分，只在后台线程上访问
+
+    private ScoreService() {
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "score-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.execute(this::load);
+    }
+
+    /**
+     * 获取全局共享的分数服务，第一次调用时开始在后台加载
+     */
+    public static synchronized ScoreService shared() {
+        if (shared == null) {
+            shared = new ScoreService();
+        }
+        return shared;
+    }
+
+    //在后台线程上读取最高分并加载排行榜索引
+    private void load() {
+        int stored = 0;
+        try {
+            byte[] content = PersistenceWriter.shared().read(Paths.get(HIGH_SCORE_FILE));
+            if (content != null) {
+                stored = Integer.parseInt(new String(content, StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("无法加载最高分: " + e.getMessage());
+        }
+        savedHighScore = stored;
+        highScore.accumulateAndGet(stored, Math::max);
+        leaderboard.getIndex();
+        loaded = true;
+    }
+
+    //最高分和排行榜索引是否已经加载
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 获取已知的历史最高分，不读取文件
+     * @return 最高分，加载完成之前只包含本次运行中保存的分数
+     */
+    public int getHighScore() {
+        return highScore.get();
+    }
+
+    /**
+     * 保存最高分：立即更新内存中的最高分，在加载完成之后比文件中的更高时才写入文件
+     * @param score 本局结束时的最高分
+     */
+    public void saveHighScore(int score) {
+        highScore.accumulateAndGet(score, Math::max);
+        worker.execute(() -> {
+            if (score > savedHighScore) {
+                savedHighScore = score;
+                byte[] content = String.valueOf(score).getBytes(StandardCharsets.UTF_8);
+                PersistenceWriter.shared().replace(Paths.get(HIGH_SCORE_FILE), content);
+            }
+        });
+    }
+
+    /**
+     * 获取共享的排行榜管理器，打开排行榜对话框时使用
+     */
+    public LeaderboardManager getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * 保存一条排行榜记录，并在后台刷新索引
+     * @param score 分数
+     * @param difficulty 难度名称
+     */
+    public void saveRecord(int score, String difficulty) {
+        leaderboard.saveRecord(score, difficulty);
+        worker.execute(leaderboard::getIndex);
+    }
+
+    /**
+     * 查询某个分数在同难度中的名次，只读内存中的索引，可在EDT上调用
+     * 与它同分的记录不计入，因此刚保存、尚未读入索引的本局成绩不影响结果
+     * @param difficulty 难度名称，null表示全部难度
+     * @return 名次（1表示第一名），索引尚未加载时返回0
+     */
+    public int rankOf(String difficulty, int score) {
+        return leaderboard.peekRank(difficulty, score);
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+/**
+ * 可合并的分数分布摘要
+ * 分数按与 Metrics.Histogram 相同的对数线性方式分桶（相对误差不超过1/32），另外精确记录个数、总和、最大值，
+ * 以及每天（本地日期，按 epochDay 编号）的记录数。
+ * 两个摘要相加（merge）等于把两批记录放在一起统计，因此可以把历史记录分块并行统计后再合并，
+ * 新记录也只需逐条加入，不必重新扫描全部历史。
+ * 本类不是线程安全的。
+ */
+public class ScoreSketch {
+    private static final int BUCKETS = Metrics.Histogram.bucketOf(Integer.MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private int max = Integer.MIN_VALUE;
+    private int firstDay;                  // daily[0] 对应的 epochDay
+    private int[] daily = new int[0];      // 每天的记录数
+
+    /**
+     * 加入一条记录
+     * @param score 分数，负分按0分桶
+     * @param epochDay 记录的本地日期（LocalDate.toEpochDay）
+     */
+    public void add(int score, int epochDay) {
+        counts[Metrics.Histogram.bucketOf(Math.max(0, score))]++;
+        count++;
+        sum += score;
+        max = Math.max(max, score);
+        ensureDay(epochDay);
+        daily[epochDay - firstDay]++;
+    }
+
+    /**
+     * 把另一个摘要的内容加到本摘要
+     */
+    public void merge(ScoreSketch other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+        if (other.daily.length > 0) {
+            ensureDay(other.firstDay);
+            ensureDay(other.firstDay + other.daily.length - 1);
+            for (int i = 0; i < other.daily.length; i++) {
+                daily[other.firstDay - firstDay + i] += other.daily[i];
+            }
+        }
+    }
+
+    //记录数
+    public long getCount() {
+        return count;
+    }
+
+    //平均分，没有记录时为0
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    //最高分，没有记录时为0
+    public int getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * 分数的百分位数（所在桶的上界，不超过最高分）
+     * @param p 0到1之间的比例，例如0.9
+     * @return 百分位数，没有记录时为0
+     */
+    public int percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * p));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return (int) Math.min(Metrics.Histogram.upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 某一天的记录数
+     * @param epochDay 本地日期（LocalDate.toEpochDay）
+     */
+    public int getDailyCount(int epochDay) {
+        int i = epochDay - firstDay;
+        return i >= 0 && i < daily.length ? daily[i] : 0;
+    }
+
+    //扩展按天计数的数组，使其包含epochDay
+    private void ensureDay(int epochDay) {
+        if (daily.length == 0) {
+            firstDay = epochDay;
+            daily = new int[16];
+        } else if (epochDay < firstDay) {
+            int shift = Math.max(firstDay - epochDay, daily.length);
+            int[] grown = new int[daily.length + shift];
+            System.arraycopy(daily, 0, grown, shift, daily.length);
+            daily = grown;
+            firstDay -= shift;
+        } else if (epochDay - firstDay >= daily.length) {
+            daily = Arrays.copyOf(daily, Math.max(epochDay - firstDay + 1, daily.length * 2));
+        }
+    }
+}
@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * 对局日志（预写日志）
+ * 把进行中的对局持续写到磁盘，进程崩溃或窗口被关闭后，下次启动可以从中断处继续。
+ *
+ * 由两个文件组成：
+ * <pre>
+ * 检查点 checkpoint.dat：int 魔数 | byte 版本 | long 代号 | byte 是否分支对局 | 引擎快照（GameEngine.Snapshot.encode）
+ * 日志   journal.dat：    int 魔数 | byte 版本 | long 代号 | 定长记录...
+ * </pre>
+ * 每条记录 RECORD_BYTES 字节：
+ * <pre>
+ * byte 类型 | byte 方块类型 | byte 旋转 | byte 消除行数 | byte 难度 | short x | short y | int 分数 | int CRC32
+ * </pre>
+ * x、y 各用一个 short，足以容纳最大的游戏区域（宽1024、高8192）。
+ * 固定方块记录保存方块的固定位置，以及固定、消行之后的分数和难度；难度记录保存手动调整后的难度。
+ * 新方块由检查点中的方块序列状态决定，消行和计分在重放时重新计算，记录中的值只用于核对。
+ *
+ * 游戏循环线程只把记录追加到内存缓冲区；第一条未写出的记录向 PersistenceWriter 提交一个写入任务，
+ * 写入线程等待一小段时间后把期间积累的所有记录一次写出并 force（组提交），节拍上没有任何磁盘操作。
+ * 每 CHECKPOINT_INTERVAL 个方块写一个新检查点并清空日志，恢复时最多重放这么多条记录。
+ * 检查点先整体写好再原子改名；日志头部的代号与检查点不同时说明日志属于更早的检查点，整体忽略；
+ * 末尾写了一半或校验不符的记录也被忽略。对局结束时两个文件都被删除。
+ */
+public class SessionJournal {
+    static final int CHECKPOINT_MAGIC = 0x54434B50;   // "TCKP"
+    static final int JOURNAL_MAGIC = 0x544A4E4C;      // "TJNL"
+    static final int VERSION = 2;                     // 2：x 由 byte 改为 short
+    static final int HEADER_BYTES = 4 + 1 + 8;
+    static final int RECORD_BYTES = 5 + 2 + 2 + 4 + 4;    // 5个byte字段、x、y、分数、校验
+    static final int LOCK = 1;                        // 固定方块
+    static final int LEVEL = 2;                       // 手动调整难度
+    private static final int PAYLOAD_BYTES = RECORD_BYTES - 4;
+    private static final int CHECKPOINT_INTERVAL = 500;
+    private static final String CHECKPOINT_FILE = "checkpoint.dat";
+    private static final String JOURNAL_FILE = "journal.dat";
+
+    private final Path checkpointPath;
+    private final Path journalPath;
+
+    // 以下字段由 this 保护：游戏循环线程写入，写入线程取走
+    private byte[] pending = new byte[PAYLOAD_BYTES * 64];   // 未写出的记录（不含校验）
+    private int pendingLength;
+    private GameEngine.Snapshot pendingCheckpoint;         // 未写出的检查点
+    private boolean pendingBranched;
+    private boolean pendingDelete;                         // 对局已经结束，删除两个文件
+    private boolean writeScheduled;                        // 是否已经提交了写入任务
+    private int locksSinceCheckpoint;
+
+    // 以下字段只在写入线程上访问
+    private byte[] spare = new byte[PAYLOAD_BYTES * 64];     // 与pending交换使用，避免每批分配
+    private ByteBuffer output = ByteBuffer.allocate(RECORD_BYTES * 64);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+
+    /**
+     * 构造函数
+     * @param dir 保存检查点和日志的目录
+     */
+    public SessionJournal(Path dir) {
+        this.checkpointPath = dir.resolve(CHECKPOINT_FILE);
+        this.journalPath = dir.resolve(JOURNAL_FILE);
+    }
+
+    /**
+     * 写入检查点，之前未写出的记录全部作废
+     * 在拥有引擎的线程上调用
+     * @param engine 进行中的引擎
+     */
+    void checkpoint(GameEngine engine) {
+        GameEngine.Snapshot snapshot = engine.snapshot();
+        synchronized (this) {
+            pendingCheckpoint = snapshot;
+            pendingBranched = engine.isBranched();
+            pendingDelete = false;
+            pendingLength = 0;
+            locksSinceCheckpoint = 0;
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * 记录一个固定的方块，每 CHECKPOINT_INTERVAL 个方块改为写入检查点
+     * 在拥有引擎的线程上，于固定、消行和计分完成之后调用
+     * @param engine 引擎
+     * @param type 方块类型
+     * @param rotation 固定时的旋转状态
+     * @param x 固定时的x坐标
+     * @param y 固定时的y坐标
+     * @param lines 消除的行数
+     */
+    void lock(GameEngine engine, int type, int rotation, int x, int y, int lines) {
+        synchronized (this) {
+            if (++locksSinceCheckpoint < CHECKPOINT_INTERVAL) {
+                append(LOCK, type, rotation, lines, x, y, engine);
+                return;
+            }
+        }
+        checkpoint(engine);
+    }
+
+    /**
+     * 记录手动调整后的难度
+     * @param engine 引擎
+     */
+    synchronized void level(GameEngine engine) {
+        append(LEVEL, 0, 0, 0, 0, 0, engine);
+    }
+
+    //对局结束，删除检查点和日志
+    synchronized void finish() {
+        pendingCheckpoint = null;
+        pendingLength = 0;
+        pendingDelete = true;
+        scheduleWrite();
+    }
+
+    private void append(int kind, int type, int rotation, int lines, int x, int y, GameEngine engine) {
+        if (pendingLength + PAYLOAD_BYTES > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        ByteBuffer record = ByteBuffer.wrap(pending, pendingLength, PAYLOAD_BYTES);
+        record.put((byte) kind);
+        record.put((byte) type);
+        record.put((byte) rotation);
+        record.put((byte) lines);
+        record.put((byte) engine.getDifficultyManager().getLevelIndex());
+        record.putShort((short) x);
+        record.putShort((short) y);
+        record.putInt(engine.getScoreManager().getScore());
+        if (record.hasRemaining()) {
+            throw new IllegalStateException("日志记录长度与 RECORD_BYTES 不符");
+        }
+        pendingLength += PAYLOAD_BYTES;
+        scheduleWrite();
+    }
+
+    //第一条未写出的内容提交写入任务，写入线程处理之前到达的内容都在同一批写出
+    private void scheduleWrite() {
+        if (!writeScheduled) {
+            writeScheduled = true;
+            PersistenceWriter.shared().execute(this::write);
+        }
+    }
+
+    /**
+     * 在写入线程上写出积累的检查点和记录，最后 force 一次
+     */
+    private void write() {
+        GameEngine.Snapshot checkpoint;
+        boolean branched;
+        boolean delete;
+        byte[] records;
+        int length;
+        synchronized (this) {
+            checkpoint = pendingCheckpoint;
+            branched = pendingBranched;
+            delete = pendingDelete;
+            records = pending;
+            length = pendingLength;
+            pending = spare.length >= records.length ? spare : new byte[records.length];
+            pendingCheckpoint = null;
+            pendingDelete = false;
+            pendingLength = 0;
+            writeScheduled = false;
+        }
+        spare = records;
+        try {
+            if (delete) {
+                closeChannel();
+                Files.deleteIfExists(journalPath);
+                Files.deleteIfExists(checkpointPath);
+            }
+            if (checkpoint != null) {
+                long generation = ThreadLocalRandom.current().nextLong();
+                PersistenceWriter.writeAtomically(checkpointPath, encodeCheckpoint(checkpoint, branched, generation));
+                startJournal(generation);
+            }
+            if (length > 0 && channel != null) {
+                writeRecords(records, length);
+            }
+        } catch (IOException e) {
+            System.err.println("无法写入对局日志: " + e.getMessage());
+            closeChannel();    // 之后的记录丢弃，直到下一个检查点重新打开日志
+        }
+    }
+
+    private static byte[] encodeCheckpoint(GameEngine.Snapshot snapshot, boolean branched, long generation) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 1 + snapshot.encodedBytes());
+        buffer.putInt(CHECKPOINT_MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(generation);
+        buffer.put((byte) (branched ? 1 : 0));
+        snapshot.encode(buffer);
+        return buffer.array();
+    }
+
+    //清空日志，写入与检查点相同的代号
+    private void startJournal(long generation) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(JOURNAL_MAGIC);
+        header.put((byte) VERSION);
+        header.putLong(generation);
+        header.flip();
+        channel.write(header, 0);
+        channel.position(HEADER_BYTES);
+        channel.force(false);
+    }
+
+    //给每条记录加上校验后追加到日志末尾
+    private void writeRecords(byte[] records, int length) throws IOException {
+        int size = length / PAYLOAD_BYTES * RECORD_BYTES;
+        if (output.capacity() < size) {
+            output = ByteBuffer.allocate(Integer.highestOneBit(size) * 2);
+        }
+        output.clear();
+        for (int offset = 0; offset < length; offset += PAYLOAD_BYTES) {
+            crc.reset();
+            crc.update(records, offset, PAYLOAD_BYTES);
+            output.put(records, offset, PAYLOAD_BYTES);
+            output.putInt((int) crc.getValue());
+        }
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        channel.force(false);
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 关闭失败不影响之后重新打开
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 从检查点和日志恢复被中断的对局
+     * 在启动时、开始写入新的日志之前调用
+     * @param dir 保存检查点和日志的目录
+     * @param engine 新建的同尺寸引擎，恢复成功时变为中断前最后写出的状态
+     * @return 恢复成功返回true；没有未完成的对局、检查点损坏或尺寸不同时返回false
+     */
+    public static boolean recover(Path dir, GameEngine engine) {
+        Path checkpointPath = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpointPath)) {
+            return false;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpointPath));
+            if (buffer.getInt() != CHECKPOINT_MAGIC || buffer.get() != VERSION) {
+                return false;
+            }
+            long generation = buffer.getLong();
+            boolean branched = buffer.get() != 0;
+            GameEngine.Snapshot snapshot = GameEngine.Snapshot.decode(buffer);
+            GameBoard board = engine.getGameBoard();
+            if (snapshot.getBoard().getWidth() != board.getWidth() || snapshot.getBoard().getHeight() != board.getHeight()) {
+                return false;
+            }
+            engine.resume(snapshot, branched);
+            Path journalPath = dir.resolve(JOURNAL_FILE);
+            if (Files.exists(journalPath)) {
+                replay(ByteBuffer.wrap(Files.readAllBytes(journalPath)), generation, engine);
+            }
+            return !engine.isGameOver();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("无法恢复未完成的对局: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * 在检查点之后依次重放日志中的记录，遇到写了一半、校验不符或与重放结果不一致的记录时停止
+     * @return 重放的记录数
+     */
+    static int replay(ByteBuffer buffer, long generation, GameEngine engine) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != JOURNAL_MAGIC || buffer.get() != VERSION
+                || buffer.getLong() != generation) {
+            return 0;    // 日志属于更早的检查点
+        }
+        CRC32 crc = new CRC32();
+        Block block = engine.getGameBoard().getCurrentBlock();
+        int replayed = 0;
+        while (buffer.remaining() >= RECORD_BYTES) {
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), PAYLOAD_BYTES);
+            if ((int) crc.getValue() != buffer.getInt(buffer.position() + PAYLOAD_BYTES)) {
+                break;
+            }
+            int kind = buffer.get();
+            int type = buffer.get();
+            int rotation = buffer.get();
+            int lines = buffer.get();
+            int level = buffer.get();
+            int x = buffer.getShort();
+            int y = buffer.getShort();
+            int score = buffer.getInt();
+            buffer.getInt();
+            if (kind == LOCK) {
+                if (block.getType() != type) {
+                    break;
+                }
+                block.setRotation(rotation);
+                block.setPosition(x, y);
+                if (engine.getGameBoard().isGameOver()) {
+                    // 与已有方块重叠，说明记录与检查点不符，方块放回出现时的位置
+                    block.setRotation(0);
+                    block.setPosition(engine.getGameBoard().getSpawnX(), 0);
+                    break;
+                }
+                long linesBefore = engine.getLinesCleared();
+                if (!engine.step() || engine.getLinesCleared() - linesBefore != lines) {
+                    break;
+                }
+            } else if (kind == LEVEL) {
+                engine.getDifficultyManager().setLevelIndex(level);
+            } else {
+                break;
+            }
+            if (engine.getScoreManager().getScore() != score
+                    || engine.getDifficultyManager().getLevelIndex() != level) {
+                break;
+            }
+            replayed++;
+        }
+        return replayed;
+    }
+}
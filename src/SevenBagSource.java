@@ -0,0 +1,136 @@
+import java.nio.ByteBuffer;
+
+/**
+ * 7袋随机方块序列
+ * 每次把7种方块各一个随机打乱后放入序列，任意连续的7个方块中每种至多缺一次，
+ * 不会出现长时间等不到某种方块的情况；同一种方块两次出现之间最多隔12个其他方块。
+ *
+ * 随机数使用 SplitMix64，状态只有一个long，相同种子总是生成相同序列，可用于录像回放和可比较的基准测试。
+ * 即将出现的方块保存在 byte 环形缓冲区中，缓冲区用完时一次填入尽可能多的整袋（从空缓冲区开始是9袋共63个），
+ * 取出和查看都只是数组访问；方块序列与何时填充无关，只由种子决定。
+ */
+public class SevenBagSource implements PieceSource {
+    private static final int TYPES = 7;
+    private static final int CAPACITY = 64;              // 环形缓冲区大小，必须是2的幂
+    private static final int MASK = CAPACITY - 1;
+    static final int ENCODED_BYTES = 8 + 4 + 4 + CAPACITY;   // encode 写出的字节数
+
+    private final byte[] ring = new byte[CAPACITY];
+    private int head;                // 下一个取出的位置（只增不减，用时取模）
+    private int tail;                // 下一个写入的位置
+    private long state;              // SplitMix64 状态
+
+    /**
+     * 构造函数
+     * @param seed 随机种子
+     */
+    public SevenBagSource(long seed) {
+        this.state = seed;
+        fill();
+    }
+
+    //复制构造函数：环形缓冲区只有64字节，整体复制
+    private SevenBagSource(SevenBagSource other) {
+        System.arraycopy(other.ring, 0, ring, 0, CAPACITY);
+        this.head = other.head;
+        this.tail = other.tail;
+        this.state = other.state;
+    }
+
+    @Override
+    public int next() {
+        if (head == tail) {
+            fill();
+        }
+        return ring[head++ & MASK];
+    }
+
+    @Override
+    public int peek(int ahead) {
+        if (ahead < 0 || ahead >= getPreviewLimit()) {
+            throw new IllegalArgumentException("超出预览范围: " + ahead);
+        }
+        if (tail - head <= ahead) {
+            fill();
+        }
+        return ring[(head + ahead) & MASK];
+    }
+
+    //填充后缓冲区中至少有 CAPACITY - TYPES + 1 个方块
+    @Override
+    public int getPreviewLimit() {
+        return CAPACITY - TYPES + 1;
+    }
+
+    @Override
+    public PieceSource copy() {
+        return new SevenBagSource(this);
+    }
+
+    /**
+     * 把完整状态写入缓冲区，供对局检查点保存
+     * @param buffer 剩余空间至少为 ENCODED_BYTES
+     */
+    void encode(ByteBuffer buffer) {
+        buffer.putLong(state);
+        buffer.putInt(head);
+        buffer.putInt(tail);
+        buffer.put(ring);
+    }
+
+    /**
+     * 从缓冲区读出 encode 写入的状态
+     * @param buffer 输入缓冲区
+     * @return 之后产生的序列与保存时完全相同的方块序列
+     */
+    static SevenBagSource decode(ByteBuffer buffer) {
+        SevenBagSource source = new SevenBagSource(buffer.getLong(), buffer.getInt(), buffer.getInt());
+        buffer.get(source.ring);
+        boolean valid = source.tail - source.head >= 0 && source.tail - source.head <= CAPACITY;
+        for (byte type : source.ring) {
+            valid &= type >= 0 && type < TYPES;
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("方块序列状态损坏");
+        }
+        return source;
+    }
+
+    //decode 使用的构造函数，缓冲区内容由调用方读入
+    private SevenBagSource(long state, int head, int tail) {
+        this.state = state;
+        this.head = head;
+        this.tail = tail;
+    }
+
+    /**
+     * 向环形缓冲区填入尽可能多的整袋
+     * 每袋用由内向外的 Fisher-Yates 洗牌直接写入缓冲区
+     */
+    private void fill() {
+        while (CAPACITY - (tail - head) >= TYPES) {
+            for (int i = 0; i < TYPES; i++) {
+                int j = nextInt(i + 1);
+                ring[(tail + i) & MASK] = ring[(tail + j) & MASK];
+                ring[(tail + j) & MASK] = (byte) i;
+            }
+            tail += TYPES;
+        }
+    }
+
+    /**
+     * 返回 [0, bound) 内的随机整数
+     * 用高32位乘法取代取模，bound 很小时偏差约为 bound / 2^32，可以忽略
+     */
+    private int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    //SplitMix64
+    private long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
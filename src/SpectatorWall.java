@@ -0,0 +1,510 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 观战墙
+ * 在一个面板中同时显示多局（16到64局）正在进行的对局：一部分由 AutoPlayer 实时对战，
+ * 一部分按原来的时间间隔实时播放 replays 目录中的录像，对局结束后稍等片刻重新开始。
+ *
+ * 所有对局由一个模拟线程按真实经过的时间推进（机器人的方块每隔固定时间下落一格，录像按记录的间隔执行事件），
+ * 与绘制帧率无关：绘制跟不上时对局照常进行，画面直接跳到最新状态。每局状态变化后发布一个 GameSnapshot。
+ *
+ * 绘制在EDT上以约60帧/秒批量进行：所有棋盘画在同一张离屏图像上，每个格子从 BoardRenderer 的图块图集中整块贴图。
+ * 每局记住已经画出的每个格子，快照没有变化的棋盘直接跳过，变化的棋盘只重贴内容不同的格子（通常只有方块移动前后的几格），
+ * 一帧中所有棋盘的脏区域合并为一次重绘请求。
+ *
+ * 用法：java SpectatorWall [对局数]
+ */
+public class SpectatorWall extends JPanel {
+    private static final long serialVersionUID = 1L;
+    public static final int MAX_BOARDS = 64;             // 最多同时显示的对局数
+    public static final int DEFAULT_BOARDS = 36;         // 默认对局数，可用 -Dtetris.wall= 覆盖
+    private static final int BOARD_WIDTH = 10;           // 每局的游戏区域宽度
+    private static final int BOARD_HEIGHT = 20;          // 每局的游戏区域高度
+    private static final String REPLAY_DIR = "replays";  // 录像目录，尺寸相同的录像与机器人对局混排
+
+    private static final int FRAME_MS = 16;              // 绘制间隔，约60帧/秒
+    private static final int SIMULATION_MS = 10;         // 模拟线程推进对局的间隔
+    private static final int BOT_ROW_MS = 50;            // 机器人对局中方块每下落一格的时间
+    private static final int RESTART_DELAY_MS = 3000;    // 对局结束后停留多久再重新开始
+    private static final int MAX_CATCH_UP_MS = 1000;     // 模拟线程被耽搁时最多补上的时间，超出部分放慢而不是一次执行大量事件
+
+    private static final int MAX_WALL_WIDTH = 1600;      // 自动选择格子大小时整面墙的最大像素宽度
+    private static final int MAX_WALL_HEIGHT = 900;      // 自动选择格子大小时整面墙的最大像素高度
+    private static final int MIN_CELL = 2;               // 格子的最小像素大小
+    private static final int MAX_CELL = 16;              // 格子的最大像素大小
+    private static final int GAP = 6;                    // 棋盘之间的间距
+    private static final int HEADER_HEIGHT = 18;         // 顶部统计信息栏的高度
+    private static final int CAPTION_HEIGHT = 14;        // 每局下方说明文字的高度
+    private static final Color BACKGROUND = new Color(24, 24, 24);
+    private static final Color GRID_COLOR = new Color(50, 50, 50);
+    private static final Color TEXT_COLOR = new Color(200, 200, 200);
+    private static final Font TEXT_FONT = new Font("微软雅黑", Font.PLAIN, 11);
+
+    /**
+     * 模拟线程发布给绘制端的一局画面
+     */
+    private static final class View {
+        final GameSnapshot snapshot;
+        final String caption;      // 棋盘下方的说明文字，没有变化时与上一个View共享同一个字符串
+
+        View(GameSnapshot snapshot, String caption) {
+            this.snapshot = snapshot;
+            this.caption = caption;
+        }
+    }
+
+    /**
+     * 一局机器人对局或录像回放，只在模拟线程上访问
+     */
+    private static final class Feed {
+        final byte[] replay;         // 录像文件内容，null表示机器人对局
+        final String name;           // 说明文字的前缀
+        final Random random = new Random();
+        final AutoPlayer player = new AutoPlayer(null, false);
+        GameEngine engine;
+        ReplayPlayer.Playback playback;
+        long plannedPiece;           // 已经为第几个方块决定过落点
+        long clock;                  // 本局已经过的时间（毫秒）
+        long nextEventAt;            // 下一个事件的时间，-1表示录像已经播放完
+        long overAt;                 // 本局结束的时间，-1表示尚未结束
+        View view;                   // 最近发布的画面
+
+        Feed(byte[] replay, String name) {
+            this.replay = replay;
+            this.name = name;
+            restart();
+        }
+
+        //从头开始：机器人换一个随机种子，录像从第一个事件重新播放
+        void restart() {
+            clock = 0;
+            overAt = -1;
+            plannedPiece = -1;
+            if (replay != null) {
+                playback = new ReplayPlayer.Playback(replay);
+                engine = playback.getEngine();
+                nextEventAt = playback.hasNext() ? playback.nextDelay() : -1;
+            } else {
+                engine = new GameEngine(BOARD_WIDTH, BOARD_HEIGHT, random.nextLong());
+                nextEventAt = BOT_ROW_MS;
+            }
+        }
+
+        /**
+         * 推进一段时间，执行这段时间内到期的所有事件
+         * @return 局面是否发生了变化
+         */
+        boolean advance(long elapsed) {
+            clock += elapsed;
+            boolean changed = false;
+            if (overAt >= 0) {
+                if (clock - overAt < RESTART_DELAY_MS) {
+                    return false;
+                }
+                restart();
+                changed = true;
+            }
+            while (nextEventAt >= 0 && nextEventAt <= clock && !engine.isGameOver()) {
+                if (replay != null) {
+                    try {
+                        playback.applyNext();
+                        nextEventAt = playback.hasNext() ? nextEventAt + playback.nextDelay() : -1;
+                    } catch (IllegalArgumentException e) {
+                        nextEventAt = -1;    // 录像在中途损坏，当作播放完毕
+                    }
+                } else {
+                    if (plannedPiece != engine.getPiecesLocked()) {
+                        plannedPiece = engine.getPiecesLocked();
+                        AutoPlayer.Move move = player.decide(engine.getGameBoard());
+                        if (move != null) {
+                            engine.steerTo(move.rotations, move.x);
+                        }
+                    }
+                    engine.step();
+                    nextEventAt += BOT_ROW_MS;
+                }
+                changed = true;
+            }
+            if (overAt < 0 && (engine.isGameOver() || nextEventAt < 0)) {
+                overAt = clock;
+                changed = true;
+            }
+            return changed;
+        }
+
+        //生成要发布的画面，说明文字没有变化时沿用上一个字符串
+        View publish() {
+            String caption = name + " " + engine.getScoreManager().getScore() + (overAt >= 0 ? " 结束" : "");
+            if (view != null && view.caption.equals(caption)) {
+                caption = view.caption;
+            }
+            view = new View(GameSnapshot.capture(engine, view != null ? view.snapshot : null), caption);
+            return view;
+        }
+    }
+
+    private final int boardCount;
+    private final int columns;
+    private final int cell;                  // 格子的像素大小
+    private final int boardPixelWidth;       // 一个棋盘的像素宽度（含右边线）
+    private final int boardPixelHeight;      // 一个棋盘的像素高度（含下边线）
+    private final BufferedImage atlas;       // 所有棋盘共用的图块图集
+    private final BufferedImage wall;        // 整面墙的离屏图像
+    private final AtomicReferenceArray<View> views;   // 模拟线程发布的最新画面
+    private final View[] painted;            // 每局已经画到离屏图像上的画面
+    private final int[][] shown;             // 每局每个格子当前画出的图块下标，-1表示还没有画过
+    private final int[] target;              // 本帧要画出的图块下标，各棋盘轮流使用
+    private final Rectangle dirty = new Rectangle();
+    private final Path replayDir;
+    private Timer frameTimer;
+    private ScheduledExecutorService simulation;
+
+    // 统计信息，每秒刷新一次顶部信息栏
+    private long statsStart;
+    private int frames;
+    private int boardsRedrawn;
+    private long tilesDrawn;
+    private long renderNanos;
+
+    /**
+     * 构造函数，只计算布局，start 之后才开始对局和绘制
+     * @param boardCount 同时显示的对局数（1到MAX_BOARDS）
+     * @param replayDir 录像目录，其中与棋盘尺寸相同的录像会与机器人对局混排，null表示全部是机器人对局
+     */
+    public SpectatorWall(int boardCount, Path replayDir) {
+        this.boardCount = Math.max(1, Math.min(MAX_BOARDS, boardCount));
+        this.replayDir = replayDir;
+
+        // 选出能让格子最大的列数
+        int bestColumns = 1;
+        int bestCell = 0;
+        for (int c = 1; c <= this.boardCount; c++) {
+            int r = (this.boardCount + c - 1) / c;
+            int fitWidth = ((MAX_WALL_WIDTH - GAP) / c - GAP - 1) / BOARD_WIDTH;
+            int fitHeight = ((MAX_WALL_HEIGHT - HEADER_HEIGHT - GAP) / r - GAP - CAPTION_HEIGHT - 1) / BOARD_HEIGHT;
+            int fit = Math.min(fitWidth, fitHeight);
+            if (fit > bestCell) {
+                bestCell = fit;
+                bestColumns = c;
+            }
+        }
+        this.columns = bestColumns;
+        this.cell = Math.max(MIN_CELL, Math.min(MAX_CELL, bestCell));
+        this.boardPixelWidth = BOARD_WIDTH * cell + 1;
+        this.boardPixelHeight = BOARD_HEIGHT * cell + 1;
+        int rows = (this.boardCount + columns - 1) / columns;
+        int pixelWidth = GAP + columns * (boardPixelWidth + GAP);
+        int pixelHeight = HEADER_HEIGHT + GAP + rows * (boardPixelHeight + CAPTION_HEIGHT + GAP);
+
+        this.atlas = BoardRenderer.createTileAtlas(cell);
+        this.wall = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB);
+        this.views = new AtomicReferenceArray<>(this.boardCount);
+        this.painted = new View[this.boardCount];
+        this.shown = new int[this.boardCount][BOARD_WIDTH * BOARD_HEIGHT];
+        this.target = new int[BOARD_WIDTH * BOARD_HEIGHT];
+        for (int[] cells : shown) {
+            Arrays.fill(cells, -1);
+        }
+
+        // 背景和每个棋盘的右边线、下边线只画一次，格子和左上网格线由图块提供
+        Graphics2D g2d = wall.createGraphics();
+        g2d.setColor(BACKGROUND);
+        g2d.fillRect(0, 0, pixelWidth, pixelHeight);
+        g2d.setColor(GRID_COLOR);
+        for (int i = 0; i < this.boardCount; i++) {
+            int x = boardX(i);
+            int y = boardY(i);
+            g2d.drawLine(x + boardPixelWidth - 1, y, x + boardPixelWidth - 1, y + boardPixelHeight - 1);
+            g2d.drawLine(x, y + boardPixelHeight - 1, x + boardPixelWidth - 1, y + boardPixelHeight - 1);
+        }
+        g2d.dispose();
+
+        setPreferredSize(new Dimension(pixelWidth, pixelHeight));
+        setOpaque(true);
+    }
+
+    //第i局棋盘左上角的像素坐标
+    private int boardX(int i) {
+        return GAP + (i % columns) * (boardPixelWidth + GAP);
+    }
+
+    private int boardY(int i) {
+        return HEADER_HEIGHT + GAP + (i / columns) * (boardPixelHeight + CAPTION_HEIGHT + GAP);
+    }
+
+    /**
+     * 开始对局和绘制，必须在EDT上调用
+     * 录像在模拟线程上读取，不阻塞EDT
+     */
+    public void start() {
+        if (simulation != null) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spectator-wall");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> simulate(executor));
+        simulation = executor;
+        statsStart = System.nanoTime();
+        frameTimer = new Timer(FRAME_MS, e -> renderFrame());
+        frameTimer.setCoalesce(true);
+        frameTimer.start();
+    }
+
+    //停止对局和绘制，必须在EDT上调用
+    public void stop() {
+        if (simulation == null) {
+            return;
+        }
+        frameTimer.stop();
+        simulation.shutdownNow();
+        simulation = null;
+    }
+
+    /**
+     * 在模拟线程上创建所有对局，然后按固定间隔推进
+     * 录像最多占一半的位置，按文件名倒序（最新的在前）选取
+     */
+    private void simulate(ScheduledExecutorService executor) {
+        List<byte[]> replays = loadReplays(boardCount / 2);
+        Feed[] feeds = new Feed[boardCount];
+        for (int i = 0; i < boardCount; i++) {
+            feeds[i] = i < replays.size() ? new Feed(replays.get(i), "录像") : new Feed(null, "机器人");
+            views.set(i, feeds[i].publish());
+        }
+        long[] last = {System.nanoTime()};
+        executor.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long elapsed = Math.min(MAX_CATCH_UP_MS, (now - last[0]) / 1_000_000);
+            last[0] += elapsed * 1_000_000;    // 不足1毫秒的部分留到下一次
+            if (now - last[0] > MAX_CATCH_UP_MS * 1_000_000L) {
+                last[0] = now;
+            }
+            for (int i = 0; i < feeds.length; i++) {
+                if (feeds[i].advance(elapsed)) {
+                    views.set(i, feeds[i].publish());
+                }
+            }
+        }, SIMULATION_MS, SIMULATION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 读取录像目录中与棋盘尺寸相同的有效录像
+     * @param limit 最多读取的个数
+     */
+    private List<byte[]> loadReplays(int limit) {
+        List<byte[]> replays = new ArrayList<>();
+        if (replayDir == null || !Files.isDirectory(replayDir)) {
+            return replays;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(replayDir, "*.rpl")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            System.err.println("无法列出录像: " + e.getMessage());
+            return replays;
+        }
+        Collections.sort(files, Collections.reverseOrder());
+        for (Path file : files) {
+            if (replays.size() >= limit) {
+                break;
+            }
+            try {
+                byte[] data = Files.readAllBytes(file);
+                GameBoard board = new ReplayPlayer.Playback(data).getEngine().getGameBoard();
+                if (board.getWidth() == BOARD_WIDTH && board.getHeight() == BOARD_HEIGHT) {
+                    replays.add(data);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("跳过录像 " + file + ": " + e.getMessage());
+            }
+        }
+        return replays;
+    }
+
+    /**
+     * 绘制一帧：把所有有变化的棋盘画到离屏图像上，再合并成一次重绘请求
+     * 在EDT上由帧定时器调用，包内可见以便测量绘制开销
+     */
+    void renderFrame() {
+        long start = System.nanoTime();
+        Graphics2D g2d = null;
+        dirty.setBounds(0, 0, 0, 0);
+        for (int i = 0; i < boardCount; i++) {
+            View view = views.get(i);
+            if (view == null || view == painted[i]) {
+                continue;
+            }
+            if (g2d == null) {
+                g2d = wall.createGraphics();
+                g2d.setFont(TEXT_FONT);
+            }
+            drawBoard(g2d, i, view);
+            painted[i] = view;
+            boardsRedrawn++;
+        }
+        frames++;
+        long now = System.nanoTime();
+        renderNanos += now - start;
+        if (now - statsStart >= 1_000_000_000L) {
+            if (g2d == null) {
+                g2d = wall.createGraphics();
+                g2d.setFont(TEXT_FONT);
+            }
+            drawHeader(g2d, now - statsStart);
+        }
+        if (g2d != null) {
+            g2d.dispose();
+            if (!dirty.isEmpty()) {
+                repaint(dirty);
+            }
+        }
+    }
+
+    //把一局画面与已画出的内容比较，只贴内容不同的格子
+    private void drawBoard(Graphics2D g2d, int i, View view) {
+        GameSnapshot snapshot = view.snapshot;
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            for (int x = 0; x < BOARD_WIDTH; x++) {
+                target[y * BOARD_WIDTH + x] = snapshot.getCell(x, y);
+            }
+        }
+        int[] cells = snapshot.getPieceCells();
+        if (!snapshot.isGameOver()) {
+            int ghostY = snapshot.getPieceY() + snapshot.getDropDistance();
+            overlay(cells, snapshot.getPieceX(), ghostY, BoardRenderer.GHOST_TILE, true);
+            overlay(cells, snapshot.getPieceX(), snapshot.getPieceY(), snapshot.getPieceColor(), false);
+        }
+
+        int left = boardX(i);
+        int top = boardY(i);
+        int[] current = shown[i];
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int k = 0; k < target.length; k++) {
+            int tile = target[k];
+            if (tile == current[k]) {
+                continue;
+            }
+            current[k] = tile;
+            int px = left + (k % BOARD_WIDTH) * cell;
+            int py = top + (k / BOARD_WIDTH) * cell;
+            int sx = tile * cell;
+            g2d.drawImage(atlas, px, py, px + cell, py + cell, sx, 0, sx + cell, cell, null);
+            minX = Math.min(minX, px);
+            minY = Math.min(minY, py);
+            maxX = Math.max(maxX, px + cell);
+            maxY = Math.max(maxY, py + cell);
+            tilesDrawn++;
+        }
+        if (minX <= maxX) {
+            addDirty(minX, minY, maxX - minX, maxY - minY);
+        }
+
+        if (painted[i] == null || !view.caption.equals(painted[i].caption)) {
+            int captionY = top + boardPixelHeight;
+            g2d.setColor(BACKGROUND);
+            g2d.fillRect(left, captionY, boardPixelWidth, CAPTION_HEIGHT);
+            g2d.setColor(TEXT_COLOR);
+            g2d.drawString(view.caption, left, captionY + CAPTION_HEIGHT - 3);
+            addDirty(left, captionY, boardPixelWidth, CAPTION_HEIGHT);
+        }
+    }
+
+    //把方块的格子写入target，ghost为true时只覆盖空格
+    private void overlay(int[] cells, int pieceX, int pieceY, int tile, boolean ghost) {
+        for (int k = 0; k < cells.length; k += 2) {
+            int x = pieceX + cells[k];
+            int y = pieceY + cells[k + 1];
+            if (y >= 0 && y < BOARD_HEIGHT && x >= 0 && x < BOARD_WIDTH
+                    && (!ghost || target[y * BOARD_WIDTH + x] == BoardRenderer.EMPTY_TILE)) {
+                target[y * BOARD_WIDTH + x] = tile;
+            }
+        }
+    }
+
+    //刷新顶部信息栏：帧率、每帧绘制耗时、每秒重画的棋盘数和图块数
+    private void drawHeader(Graphics2D g2d, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        String text = String.format("观战墙  %d 局  %.0f 帧/秒  绘制 %.2f ms/帧  每秒重画 %.0f 局 %.0f 格",
+            boardCount, frames / seconds, renderNanos / 1e6 / Math.max(1, frames),
+            boardsRedrawn / seconds, tilesDrawn / seconds);
+        g2d.setColor(BACKGROUND);
+        g2d.fillRect(0, 0, wall.getWidth(), HEADER_HEIGHT);
+        g2d.setColor(TEXT_COLOR);
+        g2d.drawString(text, GAP, HEADER_HEIGHT - 4);
+        addDirty(0, 0, wall.getWidth(), HEADER_HEIGHT);
+        statsStart += elapsedNanos;
+        frames = 0;
+        boardsRedrawn = 0;
+        tilesDrawn = 0;
+        renderNanos = 0;
+    }
+
+    private void addDirty(int x, int y, int width, int height) {
+        if (dirty.isEmpty()) {
+            dirty.setBounds(x, y, width, height);
+        } else {
+            dirty.add(x, y);
+            dirty.add(x + width, y + height);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.drawImage(wall, 0, 0, null);
+    }
+
+    /**
+     * 在新窗口中打开观战墙，关闭窗口时停止所有对局，必须在EDT上调用
+     * @param boardCount 同时显示的对局数
+     * @return 打开的窗口
+     */
+    public static JFrame openWindow(int boardCount) {
+        SpectatorWall wall = new SpectatorWall(boardCount, Paths.get(REPLAY_DIR));
+        JFrame frame = new JFrame("观战墙");
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.setResizable(false);
+        frame.add(wall);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                wall.stop();
+            }
+        });
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        wall.start();
+        return frame;
+    }
+
+    public static void main(String[] args) {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOARDS;
+        SwingUtilities.invokeLater(() -> openWindow(boards).setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE));
+    }
+}
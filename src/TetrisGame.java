@@ -1,22 +1,60 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 俄罗斯方块游戏的主要游戏面板类
  * 负责处理游戏逻辑、绘制游戏界面和响应用户输入
  */
 public class TetrisGame extends JPanel {
-    // 游戏面板的尺寸常量
-    private static final int BOARD_WIDTH = 10;    // 游戏区域宽度（以方块数计）
-    private static final int BOARD_HEIGHT = 20;   // 游戏区域高度（以方块数计）
-    private static final int BLOCK_SIZE = 30;     // 每个方块的像素大小
+    // 游戏面板的尺寸常量，游戏区域大小可用 -Dtetris.width= / -Dtetris.height= 覆盖
+    private static final int DEFAULT_BOARD_WIDTH = 10;    // 默认游戏区域宽度（以方块数计）
+    private static final int DEFAULT_BOARD_HEIGHT = 20;   // 默认游戏区域高度（以方块数计）
+    private static final int MAX_BLOCK_SIZE = 30;         // 方块的最大像素大小
+    private static final int MAX_BOARD_PIXEL_WIDTH = 1200;    // 大游戏区域缩小方块后的最大像素宽度
+    private static final int MAX_BOARD_PIXEL_HEIGHT = 800;    // 大游戏区域缩小方块后的最大像素高度
+    private static final int BOARD_WIDTH = Math.max(4, Math.min(GameBoard.MAX_WIDTH,
+        Integer.getInteger("tetris.width", DEFAULT_BOARD_WIDTH)));    // 游戏区域宽度（以方块数计）
+    private static final int BOARD_HEIGHT = Math.max(4, Math.min(GameBoard.MAX_HEIGHT,
+        Integer.getInteger("tetris.height", DEFAULT_BOARD_HEIGHT)));  // 游戏区域高度（以方块数计）
+    private static final int BLOCK_SIZE = Math.max(1, Math.min(MAX_BLOCK_SIZE,
+        Math.min(MAX_BOARD_PIXEL_WIDTH / BOARD_WIDTH, MAX_BOARD_PIXEL_HEIGHT / BOARD_HEIGHT)));   // 每个方块的像素大小
+    private static final String REPLAY_DIR = "replays";   // 录像保存目录
+    private static final String SESSION_DIR = "session";  // 对局日志目录，用于继续被中断的对局
+    private static final int PREVIEW_BLOCK_SIZE = 15;     // 预览方块的像素大小
+    private static final int DEFAULT_PREVIEW = 3;         // 默认预览的方块个数，可用 -Dtetris.preview= 覆盖（0-10）
+    private static final int OVERLAY_PERIOD_MS = 500;     // 性能信息浮层的刷新间隔
+    private static final Rectangle OVERLAY_BOUNDS = new Rectangle(4, 4, 210, 40);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+    private static final Font OVERLAY_FONT = new Font("微软雅黑", Font.PLAIN, 12);
+    
+    // 按住方向键时的自动重复参数（毫秒），可用 -Dtetris.das= / -Dtetris.arr= / -Dtetris.softDrop= 覆盖
+    private static final int DEFAULT_DAS_MS = 167;       // 按住多久后开始自动重复
+    private static final int DEFAULT_ARR_MS = 33;        // 自动重复间隔，0表示直接移到墙边
+    private static final int DEFAULT_SOFT_DROP_MS = 33;  // 按住下箭头时的下落间隔
     
     // 游戏核心组件
-    private GameBoard gameBoard;                  // 游戏面板，管理方块的位置和移动
-    private ScoreManager scoreManager;            // 分数管理器，处理分数计算和记录
-    private DifficultyManager difficultyManager;  // 难度管理器，控制游戏难度
-    private Timer gameTimer;                      // 游戏定时器，控制方块下落
+    private GameEngine gameEngine;                // 游戏引擎，负责全部游戏规则，只在游戏循环线程上访问
+    private GameLoop gameLoop;                    // 游戏循环，在独立线程上推进游戏逻辑
+    private final InputQueue inputQueue = new InputQueue();          // 带时间戳的按键事件队列
+    private final AtomicLong unpaintedInput = new AtomicLong();      // 已生效但尚未绘制的最早输入时间
+    private volatile GameSnapshot snapshot;       // 游戏循环发布的最新画面快照
+    private final AtomicBoolean framePending = new AtomicBoolean();  // 是否已有待处理的重绘请求
+    private final Runnable frameTask = this::repaintBoard;           // 在EDT上处理新快照
+    private final BoardRenderer boardRenderer = new BoardRenderer();  // 游戏区域绘制器
+    private final Rectangle lastPieceBounds = new Rectangle();       // 上次请求重绘时当前方块覆盖的区域
+    private final Rectangle pieceBounds = new Rectangle();           // 本次当前方块覆盖的区域
+    private GameSnapshot paintedSnapshot;                            // 上次请求重绘时的快照
+    private final int previewCount = Math.max(0, Math.min(GameSnapshot.MAX_PREVIEW,
+        Integer.getInteger("tetris.preview", DEFAULT_PREVIEW)));    // 预览的方块个数
+    private JPanel previewPanel;                                     // 下一个方块预览，不显示时为null
     private boolean isGameOver;                   // 游戏结束标志
     
     // 控制按钮
@@ -26,22 +64,52 @@ public class TetrisGame extends JPanel {
     public JButton pauseButton;
     public JButton exitButton;
     public JButton leaderboardButton;
+    public JButton autoPlayButton;               // 自动演示开关按钮
+    public JButton practiceButton;               // 练习模式：从较早的局面分支
+    public JButton spectatorButton;              // 打开观战墙
     private boolean isPaused = false;
     
+    // 性能信息浮层和侧边栏的统计文字只在定时器中生成，绘制和节拍上不格式化也不分配
+    private final Timer overlayTimer = new Timer(OVERLAY_PERIOD_MS, e -> updateOverlay());
+    private boolean showOverlay;                  // 是否显示浮层（F键切换）
+    private String inputLatencyText = "-";
+    private GameLoop.TickStats tickStats;
+    private String overlayFrameText = "";
+    private String overlayTickText = "";
+    private long overlayFrames;                   // 上次刷新时的已绘制帧数
+    private long overlayNanos;                    // 上次刷新的时间
+    
+    // 自动演示
+    private final AutoPlayer autoPlayer = new AutoPlayer(ForkJoinPool.commonPool(), true);
+    private boolean autoPlay = false;             // 是否由自动演示控制方块
+    
     /**
-     * 构造函数：初始化游戏面板和游戏组件
+     * 构造函数：初始化游戏面板和游戏组件，开始新游戏
      */
     public TetrisGame() {
+        this(null);
+    }
+    
+    /**
+     * 构造函数：初始化游戏面板和游戏组件
+     * @param resumed 从对局日志恢复的引擎（见 recoverSession），null表示开始新游戏
+     */
+    public TetrisGame(GameEngine resumed) {
         setPreferredSize(new Dimension(BOARD_WIDTH * BLOCK_SIZE, BOARD_HEIGHT * BLOCK_SIZE));
         setBackground(Color.BLACK);
         
         // 初始化游戏组件
-        gameBoard = new GameBoard(BOARD_WIDTH, BOARD_HEIGHT);
-        scoreManager = new ScoreManager();
-        difficultyManager = new DifficultyManager();
+        if (resumed != null) {
+            gameEngine = resumed;
+            snapshot = GameSnapshot.capture(gameEngine, null);
+        } else {
+            createEngine();
+        }
         
         setupGame();
         setupControls();
+        updateOverlay();
+        overlayTimer.start();
     }
     
     /**
@@ -54,6 +122,28 @@ public class TetrisGame extends JPanel {
         return panel;
     }
     
+    /**
+     * 创建下一个方块预览面板，预览个数为0时返回null
+     */
+    public JPanel createPreviewPanel() {
+        if (previewCount == 0) {
+            return null;
+        }
+        previewPanel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                boardRenderer.drawPreview((Graphics2D) g, snapshot, previewCount, PREVIEW_BLOCK_SIZE);
+            }
+        };
+        Dimension size = BoardRenderer.previewSize(previewCount, PREVIEW_BLOCK_SIZE);
+        previewPanel.setPreferredSize(size);
+        previewPanel.setMaximumSize(size);
+        previewPanel.setBackground(Color.BLACK);
+        previewPanel.setAlignmentX(Component.LEFT_ALIGNMENT);   // 与侧边栏的标签左对齐
+        return previewPanel;
+    }
+    
     /**
      * 设置右侧控制面板
      * @param sidePanel 右侧面板
@@ -76,7 +166,10 @@ public class TetrisGame extends JPanel {
         pauseButton = new JButton("暂停");
         exitButton = new JButton("退出游戏");
         leaderboardButton = new JButton("排行榜");
-        JButton[] buttons = {increaseDifficultyButton, decreaseDifficultyButton, restartButton, pauseButton, exitButton, leaderboardButton};
+        autoPlayButton = new JButton("自动演示");
+        practiceButton = new JButton("练习模式");
+        spectatorButton = new JButton("观战墙");
+        JButton[] buttons = {increaseDifficultyButton, decreaseDifficultyButton, restartButton, pauseButton, exitButton, leaderboardButton, autoPlayButton, practiceButton, spectatorButton};
         
         for (JButton btn : buttons) {
             btn.setFont(buttonFont);
@@ -106,21 +199,22 @@ public class TetrisGame extends JPanel {
         pauseButton.setPreferredSize(buttonSize);
         exitButton.setPreferredSize(buttonSize);
         leaderboardButton.setPreferredSize(buttonSize);
+        autoPlayButton.setPreferredSize(buttonSize);
+        practiceButton.setPreferredSize(buttonSize);
+        spectatorButton.setPreferredSize(buttonSize);
         
         // 按钮事件
         increaseDifficultyButton.addActionListener(e -> {
             if (!isGameOver && !isPaused) {
-                difficultyManager.increaseDifficulty();
-                gameTimer.setDelay(difficultyManager.getCurrentSpeed());
-                repaint();
+                GameEngine engine = gameEngine;
+                gameLoop.submit(engine::increaseDifficulty);
                 requestFocusInWindow();
             }
         });
         decreaseDifficultyButton.addActionListener(e -> {
             if (!isGameOver && !isPaused) {
-                difficultyManager.decreaseDifficulty();
-                gameTimer.setDelay(difficultyManager.getCurrentSpeed());
-                repaint();
+                GameEngine engine = gameEngine;
+                gameLoop.submit(engine::decreaseDifficulty);
                 requestFocusInWindow();
             }
         });
@@ -130,23 +224,29 @@ public class TetrisGame extends JPanel {
         });
         pauseButton.addActionListener(e -> {
             if (!isGameOver) {
-                if (!isPaused) {
-                    gameTimer.stop();
-                    isPaused = true;
-                    pauseButton.setText("继续");
-                } else {
-                    gameTimer.start();
-                    isPaused = false;
-                    pauseButton.setText("暂停");
-                }
+                isPaused = !isPaused;
+                gameLoop.setPaused(isPaused);
+                pauseButton.setText(isPaused ? "继续" : "暂停");
                 requestFocusInWindow();
             }
         });
+        autoPlayButton.addActionListener(e -> {
+            toggleAutoPlay();
+            requestFocusInWindow();
+        });
+        practiceButton.addActionListener(e -> {
+            choosePracticePosition();
+            requestFocusInWindow();
+        });
+        spectatorButton.addActionListener(e -> {
+            SpectatorWall.openWindow(Integer.getInteger("tetris.wall", SpectatorWall.DEFAULT_BOARDS));
+            requestFocusInWindow();
+        });
         exitButton.addActionListener(e -> System.exit(0));
         leaderboardButton.addActionListener(e -> {
             JFrame topFrame = (JFrame) SwingUtilities.getWindowAncestor(sidePanel);
-            LeaderboardManager manager = new LeaderboardManager();
-            LeaderboardDialog dialog = new LeaderboardDialog(topFrame, manager);
+            // 共享的排行榜在启动时已经开始后台加载，对话框通常不需要再读文件
+            LeaderboardDialog dialog = new LeaderboardDialog(topFrame, ScoreService.shared().getLeaderboard());
             dialog.setVisible(true);
             // 确保对话框完全关闭后再设置焦点
             SwingUtilities.invokeLater(() -> {
@@ -156,42 +256,159 @@ public class TetrisGame extends JPanel {
         });
     }
     
+    /**
+     * 创建新的游戏引擎及其组件
+     */
+    private void createEngine() {
+        long seed = new Random().nextLong();
+        GameBoard gameBoard = new GameBoard(BOARD_WIDTH, BOARD_HEIGHT, seed);
+        gameEngine = new GameEngine(gameBoard, new ScoreManager(), new DifficultyManager());
+        gameEngine.setRecorder(new ReplayRecorder(BOARD_WIDTH, BOARD_HEIGHT, seed));
+        snapshot = GameSnapshot.capture(gameEngine, null);
+    }
+    
+    /**
+     * 读取上次被中断的对局，在创建界面之前调用
+     * 恢复的对局没有录像，结束时只记录分数
+     * @return 恢复出的引擎，没有未完成的对局时返回null
+     */
+    public static GameEngine recoverSession() {
+        GameEngine engine = new GameEngine(new GameBoard(BOARD_WIDTH, BOARD_HEIGHT), new ScoreManager(), new DifficultyManager());
+        return SessionJournal.recover(Paths.get(SESSION_DIR), engine) ? engine : null;
+    }
+    
+    /**
+     * 保存一局的录像：总是覆盖 replays/last.rpl，能进入排行榜的成绩另存一份带时间和分数的文件
+     * 必须在拥有该引擎的线程上调用，或者引擎已经结束
+     * @param engine 要保存录像的引擎
+     */
+    private static void saveReplay(GameEngine engine) {
+        ReplayRecorder recorder = engine.getRecorder();
+        if (recorder == null || recorder.getEventCount() == 0) {
+            return;
+        }
+        byte[] replay = recorder.finish(engine);
+        PersistenceWriter writer = PersistenceWriter.shared();
+        writer.replace(Paths.get(REPLAY_DIR, "last.rpl"), replay);
+        int score = engine.getScoreManager().getScore();
+        if (engine.isGameOver() && score > LeaderboardManager.MIN_SCORE) {
+            writer.replace(Paths.get(REPLAY_DIR, System.currentTimeMillis() + "-" + score + ".rpl"), replay);
+        }
+    }
+    
     /**
      * 重新开始游戏
      */
     private void restartGame() {
-        gameBoard = new GameBoard(BOARD_WIDTH, BOARD_HEIGHT);
-        scoreManager = new ScoreManager();
-        difficultyManager = new DifficultyManager();
+        // 放弃的对局也保存录像，在循环线程上生成以免与正在执行的节拍冲突
+        GameEngine previous = gameEngine;
+        if (!isGameOver) {
+            gameLoop.submit(() -> saveReplay(previous));
+        }
+        createEngine();
         isGameOver = false;
-        gameTimer.setDelay(difficultyManager.getCurrentSpeed());
-        gameTimer.restart();
+        isPaused = false;
+        pauseButton.setText("暂停");
+        gameLoop.setPaused(false);
+        gameLoop.setEngine(gameEngine);
         repaint();
     }
     
     /**
-     * 设置游戏定时器和游戏循环
+     * 创建并启动游戏循环
+     * 循环线程上的回调只保存快照，实际的重绘和游戏结束处理都切换到EDT执行
      */
     private void setupGame() {
-        gameTimer = new Timer(difficultyManager.getCurrentSpeed(), e -> {
-            if (!isGameOver) {
-                if (!gameBoard.moveDown()) {
-                    gameBoard.placeBlock();
-                    if (gameBoard.isGameOver()) {
-                        gameOver();
-                    } else {
-                        int linesCleared = gameBoard.clearLines();
-                        if (linesCleared > 0) {
-                            scoreManager.addScore(linesCleared);
-                            difficultyManager.updateDifficulty(scoreManager.getScore());
-                            gameTimer.setDelay(difficultyManager.getCurrentSpeed());
-                        }
-                    }
+        InputHandler inputHandler = new InputHandler(
+            Integer.getInteger("tetris.das", DEFAULT_DAS_MS),
+            Integer.getInteger("tetris.arr", DEFAULT_ARR_MS),
+            Integer.getInteger("tetris.softDrop", DEFAULT_SOFT_DROP_MS));
+        gameLoop = new GameLoop(gameEngine, new GameLoop.Listener() {
+            @Override
+            public void onFrame(GameSnapshot frame) {
+                snapshot = frame;
+                if (frame.getInputNanos() != 0) {
+                    unpaintedInput.compareAndSet(0, frame.getInputNanos());
+                }
+                if (framePending.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(frameTask);
                 }
-                repaint();
             }
-        });
-        gameTimer.start();
+            
+            @Override
+            public void onGameOver(GameEngine engine) {
+                SwingUtilities.invokeLater(() -> gameOver(engine));
+            }
+        }, inputQueue, inputHandler);
+        gameLoop.setJournal(new SessionJournal(Paths.get(SESSION_DIR)));
+        gameLoop.start();
+    }
+    
+    /**
+     * 练习模式：列出本局每个方块出现时的局面，选中后从那里分支继续玩
+     * 游戏已经结束时也可以分支，分支后的对局不保存录像、不计入排行榜
+     */
+    private void choosePracticePosition() {
+        List<GameEngine.Snapshot> positions = gameLoop.getHistory().list();
+        String[] labels = new String[positions.size()];
+        for (int i = 0; i < labels.length; i++) {
+            GameEngine.Snapshot position = positions.get(labels.length - 1 - i);   // 最近的局面排在最前
+            labels[i] = "第 " + (position.getPiecesLocked() + 1) + " 个方块  分数 " + position.getScore();
+        }
+        Object choice = JOptionPane.showInputDialog(this, "从哪个局面开始练习？", "练习模式",
+            JOptionPane.PLAIN_MESSAGE, null, labels, labels[0]);
+        if (choice == null) {
+            return;
+        }
+        int index = labels.length - 1 - Arrays.asList(labels).indexOf(choice);
+        gameLoop.branch(index);
+        isGameOver = false;
+        isPaused = false;
+        pauseButton.setText("暂停");
+        gameLoop.setPaused(false);
+    }
+    
+    /**
+     * 切换自动演示模式
+     */
+    private void toggleAutoPlay() {
+        autoPlay = !autoPlay;
+        gameLoop.setAutoPlayer(autoPlay ? autoPlayer : null);
+        autoPlayButton.setText(autoPlay ? "手动操作" : "自动演示");
+    }
+    
+    /**
+     * 切换性能信息浮层
+     */
+    private void toggleOverlay() {
+        showOverlay = !showOverlay;
+        if (showOverlay) {
+            overlayFrames = Metrics.FRAMES_PAINTED.sum();
+            overlayNanos = System.nanoTime();
+            overlayFrameText = "FPS -";
+            overlayTickText = "";
+        }
+        repaint(OVERLAY_BOUNDS);
+    }
+    
+    /**
+     * 刷新统计文字：侧边栏的输入延迟和节拍抖动，以及浮层显示时最近一个周期的帧率、绘制耗时和节拍抖动
+     */
+    private void updateOverlay() {
+        inputLatencyText = inputQueue.getLatencySummary();
+        tickStats = gameLoop.getTickStats();
+        if (!showOverlay) {
+            return;
+        }
+        long now = System.nanoTime();
+        long frames = Metrics.FRAMES_PAINTED.sum();
+        double fps = (frames - overlayFrames) * 1e9 / Math.max(1, now - overlayNanos);
+        overlayFrames = frames;
+        overlayNanos = now;
+        overlayFrameText = String.format("FPS %.0f  绘制 p99 %.2fms", fps, Metrics.FRAME_PAINT.percentile(0.99) / 1e6);
+        overlayTickText = String.format("节拍抖动 p99 %.2fms  最大 %.2fms",
+            Metrics.TICK_JITTER.percentile(0.99) / 1e6, Metrics.TICK_JITTER.getMax() / 1e6);
+        repaint(OVERLAY_BOUNDS);
     }
     
     /**
@@ -202,88 +419,185 @@ public class TetrisGame extends JPanel {
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_F) {   // F键：切换性能信息浮层
+                    toggleOverlay();
+                    return;
+                }
+                if (e.getKeyCode() == KeyEvent.VK_Z) {   // Z键：撤销上一个方块，游戏结束后撤销顶出的方块
+                    gameLoop.undo();
+                    isGameOver = false;
+                    return;
+                }
                 if (isGameOver) return;
+                if (e.getKeyCode() == KeyEvent.VK_A) {   // A键：切换自动演示
+                    toggleAutoPlay();
+                    return;
+                }
+                if (autoPlay || isPaused) return;
                 
-                switch (e.getKeyCode()) {
-                    case KeyEvent.VK_LEFT:    // 左箭头：向左移动
-                        gameBoard.moveLeft();
-                        break;
-                    case KeyEvent.VK_RIGHT:   // 右箭头：向右移动
-                        gameBoard.moveRight();
-                        break;
-                    case KeyEvent.VK_DOWN:    // 下箭头：加速下落
-                        gameBoard.moveDown();
-                        break;
-                    case KeyEvent.VK_UP:      // 上箭头：旋转方块
-                        gameBoard.rotate();
-                        break;
-                    case KeyEvent.VK_SPACE:   // 空格键：快速下落
-                        gameBoard.dropDown();
-                        break;
+                GameEngine.Action action = actionFor(e.getKeyCode());
+                if (action != null) {
+                    inputQueue.offer(action, true, System.nanoTime());
+                }
+            }
+            
+            @Override
+            public void keyReleased(KeyEvent e) {
+                // 松开事件总是写入，保证引擎中的按住状态能复位
+                GameEngine.Action action = actionFor(e.getKeyCode());
+                if (action != null) {
+                    inputQueue.offer(action, false, System.nanoTime());
                 }
-                repaint();
             }
         });
     }
     
+    /**
+     * 按键到游戏操作的映射
+     * @param keyCode 按键码
+     * @return 对应的操作，没有对应操作时返回null
+     */
+    private static GameEngine.Action actionFor(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_LEFT:    // 左箭头：向左移动
+                return GameEngine.Action.MOVE_LEFT;
+            case KeyEvent.VK_RIGHT:   // 右箭头：向右移动
+                return GameEngine.Action.MOVE_RIGHT;
+            case KeyEvent.VK_DOWN:    // 下箭头：加速下落
+                return GameEngine.Action.SOFT_DROP;
+            case KeyEvent.VK_UP:      // 上箭头：旋转方块
+                return GameEngine.Action.ROTATE;
+            case KeyEvent.VK_SPACE:   // 空格键：快速下落
+                return GameEngine.Action.HARD_DROP;
+            default:
+                return null;
+        }
+    }
+
     /**
      * 处理游戏结束
+     * 游戏循环不再修改已经结束的引擎，因此可以在EDT上读取它的分数
+     * @param engine 已经结束的游戏引擎
      */
-    private void gameOver() {
+    private void gameOver(GameEngine engine) {
+        if (engine != gameEngine) {
+            return;    // 结束通知到达前已经重新开始
+        }
         isGameOver = true;
-        gameTimer.stop();
+        ScoreManager scoreManager = engine.getScoreManager();
+        DifficultyManager difficultyManager = engine.getDifficultyManager();
+        if (engine.isBranched()) {
+            // 撤销过或从练习局面分支的对局不计成绩
+            JOptionPane.showMessageDialog(this,
+                "练习结束！\n得分: " + scoreManager.getScore() + "\n可以用“练习模式”回到之前的局面再试",
+                "游戏结束",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
         scoreManager.saveHighScore();
-        // 写入排行榜
-        if (scoreManager.getScore() > 1000) {
-            LeaderboardManager manager = new LeaderboardManager();
-            manager.saveRecord(scoreManager.getScore(), difficultyManager.getCurrentLevel());
+        saveReplay(engine);
+        // 写入排行榜，并查询本局在同难度中的排名
+        String rank = "";
+        if (scoreManager.getScore() > LeaderboardManager.MIN_SCORE) {
+            ScoreService service = ScoreService.shared();
+            String level = difficultyManager.getCurrentLevel();
+            service.saveRecord(scoreManager.getScore(), level);
+            // 索引在启动时已经在后台加载，这里只查内存，不在EDT上读取文件
+            int position = service.rankOf(level, scoreManager.getScore());
+            if (position > 0) {
+                rank = "\n" + level + "难度排名: 第" + position + "名";
+            }
         }
         JOptionPane.showMessageDialog(this, 
             "游戏结束！\n得分: " + scoreManager.getScore() + 
-            "\n最高分: " + scoreManager.getHighScore(),
+            "\n最高分: " + scoreManager.getHighScore() + rank,
             "游戏结束",
             JOptionPane.INFORMATION_MESSAGE);
     }
     
+    /**
+     * 请求重绘游戏区域
+     * 已固定的方块有变化时整体重绘；否则只重绘当前方块移动前后覆盖的脏矩形
+     */
+    private void repaintBoard() {
+        framePending.set(false);
+        GameSnapshot frame = snapshot;
+        boardRenderer.pieceBounds(frame, BLOCK_SIZE, pieceBounds);
+        if (!frame.sameCells(paintedSnapshot)) {
+            repaint();
+        } else {
+            lastPieceBounds.add(pieceBounds);
+            repaint(lastPieceBounds.x, lastPieceBounds.y, lastPieceBounds.width, lastPieceBounds.height);
+        }
+        if (previewPanel != null && !frame.samePreview(paintedSnapshot)) {
+            previewPanel.repaint();
+        }
+        paintedSnapshot = frame;
+        lastPieceBounds.setBounds(pieceBounds);
+    }
+    
     /**
      * 绘制游戏界面
      */
     @Override
     protected void paintComponent(Graphics g) {
+        long paintStart = System.nanoTime();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
         
-        // 绘制网格线
-        g2d.setColor(new Color(50, 50, 50));
-        for (int i = 0; i <= BOARD_WIDTH; i++) {
-            g2d.drawLine(i * BLOCK_SIZE, 0, i * BLOCK_SIZE, BOARD_HEIGHT * BLOCK_SIZE);
-        }
-        for (int i = 0; i <= BOARD_HEIGHT; i++) {
-            g2d.drawLine(0, i * BLOCK_SIZE, BOARD_WIDTH * BLOCK_SIZE, i * BLOCK_SIZE);
+        // 绘制游戏区域（网格和已固定方块来自离屏缓存）
+        boardRenderer.draw(g2d, snapshot, BLOCK_SIZE);
+        
+        if (showOverlay) {
+            g2d.setColor(OVERLAY_BACKGROUND);
+            g2d.fillRect(OVERLAY_BOUNDS.x, OVERLAY_BOUNDS.y, OVERLAY_BOUNDS.width, OVERLAY_BOUNDS.height);
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(OVERLAY_FONT);
+            g2d.drawString(overlayFrameText, OVERLAY_BOUNDS.x + 6, OVERLAY_BOUNDS.y + 16);
+            g2d.drawString(overlayTickText, OVERLAY_BOUNDS.x + 6, OVERLAY_BOUNDS.y + 33);
         }
         
-        // 绘制游戏区域
-        gameBoard.draw(g2d, BLOCK_SIZE);
+        // 统计从按键到画面变化的延迟
+        long inputNanos = unpaintedInput.getAndSet(0);
+        if (inputNanos != 0) {
+            inputQueue.recordLatency(System.nanoTime() - inputNanos);
+        }
+        Metrics.FRAME_PAINT.record(System.nanoTime() - paintStart);
+        Metrics.FRAMES_PAINTED.increment();
     }
     
     /**
      * 获取当前分数
      */
     public int getScore() {
-        return scoreManager.getScore();
+        return snapshot.getScore();
     }
     
     /**
      * 获取最高分
      */
     public int getHighScore() {
-        return scoreManager.getHighScore();
+        return snapshot.getHighScore();
     }
     
     /**
      * 获取当前难度
      */
     public String getDifficulty() {
-        return difficultyManager.getCurrentLevel();
+        return snapshot.getLevel();
+    }
+    
+    /**
+     * 获取“平均/最大”输入延迟，每 OVERLAY_PERIOD_MS 毫秒刷新一次
+     */
+    public String getInputLatency() {
+        return inputLatencyText;
+    }
+    
+    /**
+     * 获取游戏循环的节拍抖动统计，每 OVERLAY_PERIOD_MS 毫秒刷新一次
+     */
+    public GameLoop.TickStats getTickStats() {
+        return tickStats;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,320 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 自动演示权重调优工具
+ * 用交叉熵方法（CEM）在 AutoPlayer 的权重空间中搜索：每一代按当前的均值和标准差抽样出一组候选权重，
+ * 每个候选用相同的几组种子在无界面引擎上自我对局，以平均消行数为适应度，
+ * 取最好的一部分候选重新估计均值和标准差，并在方差上加一个逐代递减的噪声防止过早收敛。
+ *
+ * 所有对局（候选 × 种子）切分成 ForkJoin 任务，在指定线程数的 ForkJoinPool 上靠工作窃取占满所有核心；
+ * 每局在工作线程内顺序搜索，每个工作线程同一时刻只操作一个游戏区域。
+ * 得分只取决于权重的方向，所以候选权重都归一化为单位向量。
+ *
+ * 每代结束后把均值、标准差和历史最佳权重写入检查点文件（通过 PersistenceWriter 原子替换），
+ * 再次运行时从检查点继续，进程被中断最多损失正在进行的一代。
+ *
+ * 用法：java WeightTuner [代数] [候选数] [每个候选的局数] [线程数] [检查点文件]
+ */
+public class WeightTuner {
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 20;
+    private static final int MAX_PIECES_PER_GAME = 20_000;    // 单局最多方块数，好的权重几乎不会输
+    private static final double ELITE_FRACTION = 0.2;         // 用于更新分布的精英比例
+    private static final double INITIAL_SIGMA = 0.5;          // 初始标准差
+    private static final double NOISE = 0.01;                 // 第0代加到方差上的噪声
+    private static final int NOISE_GENERATIONS = 50;          // 噪声线性递减到0所需的代数
+    private static final String[] FEATURE_NAMES = {"总高度", "最大高度", "空洞", "凹凸度", "行变换", "井深", "消行"};
+
+    private final int population;
+    private final int gamesPerCandidate;
+    private final ForkJoinPool pool;
+    private final Path checkpoint;
+
+    // 调优状态，写入检查点
+    private long seed;
+    private int generation;
+    private double[] mean;
+    private double[] sigma;
+    private double[] best;
+    private double bestFitness = -1;
+    private long totalGames;
+    private long totalPieces;
+
+    /**
+     * 构造函数：检查点存在时从中恢复，否则从默认权重出发
+     * @param population 每代的候选数，至少为2（均值和标准差至少由两个精英估计）
+     * @param gamesPerCandidate 每个候选的对局数
+     * @param threads 线程数
+     * @param checkpoint 检查点文件
+     */
+    public WeightTuner(int population, int gamesPerCandidate, int threads, Path checkpoint) throws IOException {
+        if (population < 2) {
+            throw new IllegalArgumentException("候选数至少为2: " + population);
+        }
+        this.population = population;
+        this.gamesPerCandidate = gamesPerCandidate;
+        this.pool = new ForkJoinPool(threads);
+        this.checkpoint = checkpoint;
+        if (Files.exists(checkpoint)) {
+            load(new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8));
+        } else {
+            seed = new Random().nextLong();
+            mean = normalize(AutoPlayer.DEFAULT_WEIGHTS.clone());
+            sigma = new double[BoardFeatures.COUNT];
+            Arrays.fill(sigma, INITIAL_SIGMA);
+            best = mean.clone();
+        }
+    }
+
+    /**
+     * 进行一代：抽样、并行对局、更新分布、写检查点
+     * @return 本代的统计
+     */
+    public String runGeneration() {
+        Random random = new Random(seed ^ (generation * 0x9E3779B97F4A7C15L));
+        double[][] candidates = new double[population][];
+        for (int i = 0; i < population; i++) {
+            double[] w = new double[BoardFeatures.COUNT];
+            for (int k = 0; k < w.length; k++) {
+                w[k] = mean[k] + sigma[k] * random.nextGaussian();
+            }
+            candidates[i] = normalize(w);
+        }
+        // 同一代的所有候选使用相同的种子，减少比较时的随机误差
+        long[] seeds = new long[gamesPerCandidate];
+        for (int g = 0; g < seeds.length; g++) {
+            seeds[g] = random.nextLong();
+        }
+
+        long start = System.nanoTime();
+        long[] lines = new long[population * gamesPerCandidate];
+        long[] pieces = new long[lines.length];
+        pool.invoke(new PlayTask(candidates, seeds, lines, pieces, 0, lines.length));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Integer[] order = new Integer[population];
+        double[] fitness = new double[population];
+        long generationPieces = 0;
+        for (int i = 0; i < population; i++) {
+            long sum = 0;
+            for (int g = 0; g < gamesPerCandidate; g++) {
+                sum += lines[i * gamesPerCandidate + g];
+                generationPieces += pieces[i * gamesPerCandidate + g];
+            }
+            fitness[i] = (double) sum / gamesPerCandidate;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+
+        int elite = Math.max(2, (int) Math.ceil(population * ELITE_FRACTION));
+        double noise = NOISE * Math.max(0, 1 - (double) generation / NOISE_GENERATIONS);
+        double eliteFitness = 0;
+        for (int k = 0; k < BoardFeatures.COUNT; k++) {
+            double m = 0;
+            for (int j = 0; j < elite; j++) {
+                m += candidates[order[j]][k];
+            }
+            m /= elite;
+            double var = 0;
+            for (int j = 0; j < elite; j++) {
+                double d = candidates[order[j]][k] - m;
+                var += d * d;
+            }
+            mean[k] = m;
+            sigma[k] = Math.sqrt(var / elite + noise);
+        }
+        for (int j = 0; j < elite; j++) {
+            eliteFitness += fitness[order[j]];
+        }
+        eliteFitness /= elite;
+        if (fitness[order[0]] > bestFitness) {
+            bestFitness = fitness[order[0]];
+            best = candidates[order[0]].clone();
+        }
+
+        generation++;
+        totalGames += lines.length;
+        totalPieces += generationPieces;
+        PersistenceWriter.shared().replace(checkpoint, save());
+        return String.format("第 %d 代  最佳 %.1f 行  精英平均 %.1f 行  %.1f 局/秒  %.0f 方块/秒  历史最佳 %.1f 行",
+            generation, fitness[order[0]], eliteFitness, lines.length / seconds, generationPieces / seconds, bestFitness);
+    }
+
+    /**
+     * 对一段（候选, 种子）组合进行对局的并行任务，超过一局时一分为二
+     */
+    private static final class PlayTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final double[][] candidates;
+        private final long[] seeds;
+        private final long[] lines;
+        private final long[] pieces;
+        private final int from;
+        private final int to;
+
+        PlayTask(double[][] candidates, long[] seeds, long[] lines, long[] pieces, int from, int to) {
+            this.candidates = candidates;
+            this.seeds = seeds;
+            this.lines = lines;
+            this.pieces = pieces;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PlayTask(candidates, seeds, lines, pieces, from, mid),
+                    new PlayTask(candidates, seeds, lines, pieces, mid, to));
+                return;
+            }
+            GameEngine engine = play(candidates[from / seeds.length], seeds[from % seeds.length]);
+            lines[from] = engine.getLinesCleared();
+            pieces[from] = engine.getPiecesLocked();
+        }
+    }
+
+    /**
+     * 用给定权重在当前线程上完整进行一局
+     * @param weights 启发式权重
+     * @param seed 方块序列的随机种子
+     * @return 结束后的引擎
+     */
+    static GameEngine play(double[] weights, long seed) {
+        GameEngine engine = new GameEngine(WIDTH, HEIGHT, seed);
+        AutoPlayer player = new AutoPlayer(null, false, weights);
+        while (!engine.isGameOver() && engine.getPiecesLocked() < MAX_PIECES_PER_GAME) {
+            AutoPlayer.Move move = player.decide(engine.getGameBoard());
+            if (move != null) {
+                engine.dropAt(move.rotations, move.x);
+            }
+            engine.step();
+        }
+        return engine;
+    }
+
+    //把向量缩放为单位长度，返回同一个数组
+    private static double[] normalize(double[] w) {
+        double norm = 0;
+        for (double v : w) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int k = 0; k < w.length; k++) {
+                w[k] /= norm;
+            }
+        }
+        return w;
+    }
+
+    //检查点内容（Properties 文本）
+    private byte[] save() {
+        Properties p = new Properties();
+        p.setProperty("seed", Long.toString(seed));
+        p.setProperty("generation", Integer.toString(generation));
+        p.setProperty("mean", join(mean));
+        p.setProperty("sigma", join(sigma));
+        p.setProperty("best", join(best));
+        p.setProperty("bestFitness", Double.toString(bestFitness));
+        p.setProperty("games", Long.toString(totalGames));
+        p.setProperty("pieces", Long.toString(totalPieces));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            p.store(out, "WeightTuner checkpoint");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);   // 写内存不会失败
+        }
+        return out.toByteArray();
+    }
+
+    private void load(String text) throws IOException {
+        Properties p = new Properties();
+        p.load(new StringReader(text));
+        try {
+            seed = Long.parseLong(p.getProperty("seed"));
+            generation = Integer.parseInt(p.getProperty("generation"));
+            mean = split(p.getProperty("mean"));
+            sigma = split(p.getProperty("sigma"));
+            best = split(p.getProperty("best"));
+            bestFitness = Double.parseDouble(p.getProperty("bestFitness"));
+            totalGames = Long.parseLong(p.getProperty("games"));
+            totalPieces = Long.parseLong(p.getProperty("pieces"));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IOException("检查点文件已损坏: " + checkpoint, e);
+        }
+        if (mean.length != BoardFeatures.COUNT || sigma.length != BoardFeatures.COUNT || best.length != BoardFeatures.COUNT) {
+            throw new IOException("检查点文件的特征个数不匹配: " + checkpoint);
+        }
+    }
+
+    private static String join(double[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < values.length; k++) {
+            if (k > 0) {
+                sb.append(',');
+            }
+            sb.append(values[k]);
+        }
+        return sb.toString();
+    }
+
+    private static double[] split(String text) {
+        String[] parts = text.split(",");
+        double[] values = new double[parts.length];
+        for (int k = 0; k < parts.length; k++) {
+            values[k] = Double.parseDouble(parts[k].trim());
+        }
+        return values;
+    }
+
+    //用特征名标注的权重
+    static String describe(double[] weights) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < weights.length; k++) {
+            sb.append(String.format("%s %.4f  ", FEATURE_NAMES[k], weights[k]));
+        }
+        return sb.toString().trim();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int population = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Path checkpoint = Paths.get(args.length > 4 ? args[4] : "tuner.properties");
+        if (population < 2) {
+            System.err.println("候选数至少为2");
+            System.err.println("用法：java WeightTuner [代数] [候选数] [每个候选的局数] [线程数] [检查点文件]");
+            return;
+        }
+
+        WeightTuner tuner = new WeightTuner(population, games, threads, checkpoint);
+        System.out.printf("候选 %d  每个候选 %d 局  线程 %d  检查点 %s%s%n", population, games, threads, checkpoint,
+            tuner.generation > 0 ? "（从第 " + tuner.generation + " 代继续）" : "");
+        long start = System.nanoTime();
+        long gamesBefore = tuner.totalGames;
+        while (tuner.generation < generations) {
+            System.out.println(tuner.runGeneration());
+            System.out.println("  均值: " + describe(tuner.mean));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("完成 %d 代，本次 %d 局（%.1f 局/秒），累计 %d 局 %d 方块%n", tuner.generation,
+            tuner.totalGames - gamesBefore, (tuner.totalGames - gamesBefore) / Math.max(seconds, 1e-9),
+            tuner.totalGames, tuner.totalPieces);
+        System.out.printf("最佳权重（平均 %.1f 行）: %s%n", tuner.bestFitness, describe(tuner.best));
+        PersistenceWriter.shared().flush();
+    }
+}